@@ -10,4 +10,19 @@ public interface FFClient {
     Integer getIntegerVariation(String key, Integer dflt);
     Double getDoubleVariation(String key, Double dflt);
     Boolean getBooleanVariation(String key, Boolean dflt);
+    // JSON flag mapped to type, bound once per flag change and variation and the same object returned to every
+    // caller until then: callers must not mutate it (records are the natural fit)
+    <T> T getJsonVariation(String key, Class<T> type, T dflt);
+
+    // the same handle is returned for a key, the default of the first call is kept
+    FlagHandle<String> stringFlag(String key, String dflt);
+    FlagHandle<Integer> integerFlag(String key, Integer dflt);
+    FlagHandle<Double> doubleFlag(String key, Double dflt);
+    FlagHandle<Boolean> booleanFlag(String key, Boolean dflt);
+
+    // all flags for the current user, from one consistent allFlagsState: every flag is evaluated, and the
+    // evaluations are not counted in the flag analytics (insights, experiments).  Handlers use snapshot(FlagSet)
+    FlagSnapshot snapshot();
+    // only the declared flags, evaluated one by one for the current user and counted like the get*Variation calls
+    FlagSnapshot snapshot(FlagSet flags);
 }
@@ -1,13 +1,22 @@
 package com.capturerx.featureflags;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.launchdarkly.sdk.ContextKind;
 import com.launchdarkly.sdk.EvaluationDetail;
+import com.launchdarkly.sdk.EvaluationReason;
 import com.launchdarkly.sdk.LDContext;
+import com.launchdarkly.sdk.LDValue;
 import com.launchdarkly.sdk.server.Components;
+import com.launchdarkly.sdk.server.FeatureFlagsState;
+import com.launchdarkly.sdk.server.FlagsStateOption;
 import com.launchdarkly.sdk.server.LDClient;
 import com.launchdarkly.sdk.server.LDConfig;
 import com.launchdarkly.sdk.server.integrations.FileData;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider;
+import com.launchdarkly.sdk.server.interfaces.FlagChangeListener;
+import com.launchdarkly.sdk.server.interfaces.FlagTracker;
 import com.launchdarkly.sdk.server.interfaces.LDClientInterface;
 import jakarta.annotation.PreDestroy;
 import org.apache.logging.log4j.util.Strings;
@@ -24,8 +33,15 @@ import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
 
 
 @Configuration
@@ -41,6 +57,7 @@ public class FeatureFlags implements  ApplicationContextAware {
     public static final String DETAIL_LOGGING_KEY = "FF.log.details";
     private static final String DETAIL_RESULT_MSG = "FF request key:%s, for:%s, result: %s";
     public static final String APP_NAME = "info.app.name";
+    public static final String CONTEXT_CACHE_SIZE = "ldcontext.cache.max-size";
 
 
     private Logger log = LoggerFactory.getLogger(this.getClass());
@@ -49,7 +66,24 @@ public class FeatureFlags implements  ApplicationContextAware {
 
     private DataSourceListener dataSourceListener;
     private LDClientInterface ldClient;
-    private LDContext ldUser;
+    private volatile LDContext ldUser;
+    // contexts of the MDC usernames, bounded by CONTEXT_CACHE_SIZE, evicted by a second chance sweep
+    private final Map<String, CachedContext> userContexts = new ConcurrentHashMap<>();
+    private int contextCacheSize = 10000;
+    // FF.log.details for the default context, kept current by a FlagTracker listener
+    private volatile Boolean detailLogging;
+    private FlagChangeListener detailLoggingListener;
+    private final Map<String, FlagHandle<?>> handles = new ConcurrentHashMap<>();
+    private final List<FlagChangeListener> handleListeners = new CopyOnWriteArrayList<>();
+    // parsed JSON variations by flag key, then type and variation index, dropped when the flag changes
+    private final Map<String, Map<JsonCacheKey, ParsedJson>> jsonValues = new ConcurrentHashMap<>();
+    private volatile FlagChangeListener jsonValuesListener;
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private record JsonCacheKey(Class<?> type, int variationIndex) {}
+    // the source guards against an evaluation from before a change filling the cache after it was dropped
+    private record ParsedJson(LDValue source, Object value) {}
+    private static final Object UNPARSEABLE = new Object();
     LDConfig ldConfig;
     private String appName;
     private ApplicationContext ctx;
@@ -69,6 +103,15 @@ public class FeatureFlags implements  ApplicationContextAware {
         closing = true;
         if (ldClient != null) {
             try {
+                if (detailLoggingListener != null) {
+                    ldClient.getFlagTracker().removeFlagChangeListener(detailLoggingListener);
+                }
+                if (jsonValuesListener != null) {
+                    ldClient.getFlagTracker().removeFlagChangeListener(jsonValuesListener);
+                }
+                for (FlagChangeListener listener : handleListeners) {
+                    ldClient.getFlagTracker().removeFlagChangeListener(listener);
+                }
                 if (dataSourceListener != null) {
                     ldClient.getDataSourceStatusProvider().removeStatusListener(dataSourceListener);
                 }
@@ -198,6 +241,10 @@ public class FeatureFlags implements  ApplicationContextAware {
         }
         ldUser = createLDUser(DEFAULT_USER_KEY);
         appName = env.getProperty(APP_NAME);
+        Integer cacheSize = env.getProperty(CONTEXT_CACHE_SIZE, Integer.class);
+        if (cacheSize != null) {
+            contextCacheSize = cacheSize;
+        }
     }
 
     public synchronized void shutdown() {
@@ -215,17 +262,155 @@ public class FeatureFlags implements  ApplicationContextAware {
         return ldClient;
     }
 
-    public synchronized LDContext getUser() {
-        if (ldUser == null) {
-            ldUser = createLDUser(DEFAULT_USER_KEY);
-        }
+    // called on every evaluation, no locking, a racing lazy init creates an equal context
+    LDContext getDefaultUser() {
         LDContext user = ldUser;
+        if (user == null) {
+            user = createLDUser(DEFAULT_USER_KEY);
+            ldUser = user;
+        }
+        return user;
+    }
+
+    public LDContext getUser() {
+        LDContext user = getDefaultUser();
         // if there is a username in the MDC use it for the email attribute
         String username = MDC.get("username");
-        if (username != null && !username.isEmpty()) {
-            user = createLDUser(username);
+        if (username == null || username.isEmpty()) {
+            return user;
         }
-        return user;
+        CachedContext cached = userContexts.get(username);
+        if (cached == null) {
+            if (userContexts.size() >= contextCacheSize) {
+                evictContext();
+            }
+            cached = userContexts.computeIfAbsent(username, name -> new CachedContext(createLDUser(name)));
+        }
+        // only written when it changes, a hit stays a read
+        if (!cached.used) {
+            cached.used = true;
+        }
+        return cached.context;
+    }
+
+    private static final class CachedContext {
+        final LDContext context;
+        // set on every hit, cleared by the sweep
+        volatile boolean used;
+
+        CachedContext(LDContext context) {
+            this.context = context;
+        }
+    }
+
+    // clock style: a context used since the last sweep gets a second chance, the first one not used is dropped.
+    // Approximate, racing inserts can leave the cache a few entries over the bound
+    private void evictContext() {
+        for (int pass = 0; pass < 2; pass++) {
+            Iterator<CachedContext> contexts = userContexts.values().iterator();
+            while (contexts.hasNext()) {
+                CachedContext cached = contexts.next();
+                if (cached.used) {
+                    cached.used = false;
+                } else {
+                    contexts.remove();
+                    return;
+                }
+            }
+        }
+    }
+
+    int getCachedContextCount() {
+        return userContexts.size();
+    }
+
+    boolean isDetailLogging() {
+        Boolean cached = detailLogging;
+        return cached != null ? cached : trackDetailLogging();
+    }
+
+    // the listener is added before the first evaluation so no change is missed, without a tracker (mocked
+    // clients) the flag is evaluated on every call
+    private synchronized boolean trackDetailLogging() {
+        if (detailLogging != null) return detailLogging;
+        LDClientInterface client = getLDClient();
+        FlagTracker tracker = client.getFlagTracker();
+        if (tracker != null && detailLoggingListener == null) {
+            detailLoggingListener = tracker.addFlagValueChangeListener(DETAIL_LOGGING_KEY, getDefaultUser(),
+                    event -> detailLogging = event.getNewValue().booleanValue());
+        }
+        boolean value = client.boolVariation(DETAIL_LOGGING_KEY, getDefaultUser(), false);
+        if (detailLoggingListener != null) {
+            detailLogging = value;
+        }
+        return value;
+    }
+
+    // the listener is added before the first evaluation, without a tracker the handle keeps its first value
+    @SuppressWarnings("unchecked")
+    <T> FlagHandle<T> getHandle(String type, String key, Supplier<T> evaluation) {
+        return (FlagHandle<T>) handles.computeIfAbsent(type + ":" + key, k -> {
+            FlagHandle<T> handle = new FlagHandle<>(key);
+            FlagTracker tracker = getLDClient().getFlagTracker();
+            if (tracker != null) {
+                handleListeners.add(tracker.addFlagValueChangeListener(key, getDefaultUser(), event -> {
+                    handle.set(evaluation.get());
+                    log.info(String.format("FF handle updated %s", handle));
+                }));
+            } else {
+                log.warn(String.format("No flag tracker, %s is not updated", key));
+            }
+            handle.set(evaluation.get());
+            return handle;
+        });
+    }
+
+    // without a tracker (mocked clients) nothing is cached, a change could not be seen
+    private synchronized boolean trackJsonValues() {
+        if (jsonValuesListener != null) return true;
+        FlagTracker tracker = getLDClient().getFlagTracker();
+        if (tracker == null) return false;
+        FlagChangeListener listener = event -> jsonValues.remove(event.getKey());
+        tracker.addFlagChangeListener(listener);
+        jsonValuesListener = listener;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T toJsonValue(String key, EvaluationDetail<LDValue> detail, Class<T> type, T dflt) {
+        int variationIndex = detail.getVariationIndex();
+        if (variationIndex == EvaluationDetail.NO_VARIATION || detail.getValue() == null || detail.getValue().isNull()) {
+            return dflt;
+        }
+        LDValue value = detail.getValue();
+        Object parsed;
+        if (jsonValuesListener != null || trackJsonValues()) {
+            Map<JsonCacheKey, ParsedJson> values = jsonValues.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+            JsonCacheKey cacheKey = new JsonCacheKey(type, variationIndex);
+            ParsedJson cached = values.get(cacheKey);
+            if (cached == null || (cached.source() != value && !cached.source().equals(value))) {
+                cached = new ParsedJson(value, parse(key, value, type));
+                values.put(cacheKey, cached);
+            }
+            parsed = cached.value();
+        } else {
+            parsed = parse(key, value, type);
+        }
+        return parsed == UNPARSEABLE ? dflt : (T) parsed;
+    }
+
+    private Object parse(String key, LDValue value, Class<?> type) {
+        try {
+            return mapper.readValue(value.toJsonString(), type);
+        } catch (JsonProcessingException e) {
+            log.error(String.format("FF request key:%s, value not a %s: %s", key, type.getName(), e.getOriginalMessage()));
+            return UNPARSEABLE;
+        }
+    }
+
+    int getCachedJsonValueCount(String key) {
+        Map<JsonCacheKey, ParsedJson> values = jsonValues.get(key);
+        return values != null ? values.size() : 0;
     }
 
     @Bean(name = "FFClient")
@@ -247,7 +432,7 @@ public class FeatureFlags implements  ApplicationContextAware {
         public String getStringVariation(String key, String dflt) {
             LDContext user = getUser();
             EvaluationDetail<String> detail = getLDClient().stringVariationDetail(key, user, dflt);
-            testForLogging(String.format(DETAIL_RESULT_MSG, key, user, detail), detail.toString());
+            testForLogging(key, user, detail);
             return detail.getValue();
         }
 
@@ -255,7 +440,7 @@ public class FeatureFlags implements  ApplicationContextAware {
         public Integer getIntegerVariation(String key, Integer dflt) {
             LDContext user = getUser();
             EvaluationDetail<Integer> detail = getLDClient().intVariationDetail(key, user, dflt);
-            testForLogging(String.format(DETAIL_RESULT_MSG, key, user, detail), detail.toString());
+            testForLogging(key, user, detail);
             return detail.getValue();
         }
 
@@ -263,7 +448,7 @@ public class FeatureFlags implements  ApplicationContextAware {
         public Double getDoubleVariation(String key, Double dflt) {
             LDContext user = getUser();
             EvaluationDetail<Double> detail = getLDClient().doubleVariationDetail(key, user, dflt);
-            testForLogging(String.format(DETAIL_RESULT_MSG, key, user, detail), detail.toString());
+            testForLogging(key, user, detail);
             return detail.getValue();
         }
 
@@ -271,17 +456,95 @@ public class FeatureFlags implements  ApplicationContextAware {
         public Boolean getBooleanVariation(String key, Boolean dflt) {
             LDContext user = getUser();
             EvaluationDetail<Boolean> detail = getLDClient().boolVariationDetail(key, user, dflt);
-            testForLogging(String.format(DETAIL_RESULT_MSG, key, user, detail), detail.toString());
+            testForLogging(key, user, detail);
             return detail.getValue();
         }
 
-        private void testForLogging(String msg, String reason) {
-            if (reason.contains("ERROR")) {
-                log.error(msg);
+        @Override
+        public <T> T getJsonVariation(String key, Class<T> type, T dflt) {
+            LDContext user = getUser();
+            EvaluationDetail<LDValue> detail = getLDClient().jsonValueVariationDetail(key, user, LDValue.ofNull());
+            testForLogging(key, user, detail);
+            return toJsonValue(key, detail, type, dflt);
+        }
+
+        @Override
+        public FlagHandle<String> stringFlag(String key, String dflt) {
+            return getHandle("string", key, () -> getLDClient().stringVariation(key, getDefaultUser(), dflt));
+        }
+
+        @Override
+        public FlagHandle<Integer> integerFlag(String key, Integer dflt) {
+            return getHandle("integer", key, () -> getLDClient().intVariation(key, getDefaultUser(), dflt));
+        }
+
+        @Override
+        public FlagHandle<Double> doubleFlag(String key, Double dflt) {
+            return getHandle("double", key, () -> getLDClient().doubleVariation(key, getDefaultUser(), dflt));
+        }
+
+        @Override
+        public FlagHandle<Boolean> booleanFlag(String key, Boolean dflt) {
+            return getHandle("boolean", key, () -> getLDClient().boolVariation(key, getDefaultUser(), dflt));
+        }
+
+        @Override
+        public FlagSnapshot snapshot() {
+            LDContext user = getUser();
+            FeatureFlagsState state = getLDClient().allFlagsState(user, FlagsStateOption.WITH_REASONS);
+            if (state == null || !state.isValid()) {
+                log.error(String.format("FF snapshot for:%s, flags state not available", user));
+                return new FlagSnapshot(FlagSet.of(), new LDValue[0]);
+            }
+            Map<String, LDValue> valuesMap = state.toValuesMap();
+            FlagSet flags = FlagSet.of(new ArrayList<>(valuesMap.keySet()));
+            LDValue[] values = new LDValue[flags.size()];
+            for (int i = 0; i < values.length; i++) {
+                String key = flags.getKey(i);
+                values[i] = LDValue.normalize(valuesMap.get(key));
+                EvaluationReason reason = state.getFlagReason(key);
+                if (reason != null) {
+                    logError(key, user, EvaluationDetail.fromValue(values[i], EvaluationDetail.NO_VARIATION, reason));
+                }
             }
-            else if (getLDClient().boolVariation(DETAIL_LOGGING_KEY, ldUser,false)) {
-                log.info(msg);
+            return logSnapshot(user, new FlagSnapshot(flags, values));
+        }
+
+        @Override
+        public FlagSnapshot snapshot(FlagSet flags) {
+            LDContext user = getUser();
+            LDClientInterface client = getLDClient();
+            LDValue[] values = new LDValue[flags.size()];
+            for (int i = 0; i < values.length; i++) {
+                EvaluationDetail<LDValue> detail = client.jsonValueVariationDetail(flags.getKey(i), user, LDValue.ofNull());
+                logError(flags.getKey(i), user, detail);
+                values[i] = LDValue.normalize(detail.getValue());
+            }
+            return logSnapshot(user, new FlagSnapshot(flags, values));
+        }
+
+        private FlagSnapshot logSnapshot(LDContext user, FlagSnapshot snapshot) {
+            if (isDetailLogging()) {
+                log.info(String.format("FF snapshot for:%s, result: %s", user, snapshot));
+            }
+            return snapshot;
+        }
+
+        // the message is only formatted when it is logged
+        private void testForLogging(String key, LDContext user, EvaluationDetail<?> detail) {
+            if (!logError(key, user, detail) && isDetailLogging()) {
+                log.info(String.format(DETAIL_RESULT_MSG, key, user, detail));
+            }
+        }
+
+        // snapshots log the error reasons per flag, the values once in logSnapshot
+        private boolean logError(String key, LDContext user, EvaluationDetail<?> detail) {
+            EvaluationReason reason = detail.getReason();
+            if (reason != null && reason.getKind() == EvaluationReason.Kind.ERROR) {
+                log.error(String.format(DETAIL_RESULT_MSG, key, user, detail));
+                return true;
             }
+            return false;
         }
     }
 }
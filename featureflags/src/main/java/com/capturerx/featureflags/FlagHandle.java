@@ -0,0 +1,33 @@
+package com.capturerx.featureflags;
+
+/**
+ * A flag bound to the default context, see FFClient.booleanFlag etc.  The value is evaluated once and
+ * re-evaluated by a FlagTracker listener when the flag changes, get() is a single volatile read.
+ * For targeting by the MDC username keep using the get*Variation calls.
+ */
+public final class FlagHandle<T> {
+
+    private final String key;
+    private volatile T value;
+
+    FlagHandle(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public T get() {
+        return value;
+    }
+
+    void set(T value) {
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s=%s", key, value);
+    }
+}
@@ -0,0 +1,51 @@
+package com.capturerx.featureflags;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The flags a unit of work reads, declared once (e.g. a static final) and passed to FFClient.snapshot(FlagSet)
+ * so that only these flags are evaluated.
+ */
+public final class FlagSet {
+
+    private final String[] keys;
+    private final Map<String, Integer> indexes;
+
+    private FlagSet(String[] keys) {
+        this.keys = keys;
+        indexes = new HashMap<>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            indexes.putIfAbsent(keys[i], i);
+        }
+    }
+
+    public static FlagSet of(String... keys) {
+        return new FlagSet(keys.clone());
+    }
+
+    static FlagSet of(List<String> keys) {
+        return new FlagSet(keys.toArray(new String[0]));
+    }
+
+    // -1 for a key that is not part of the set
+    public int indexOf(String key) {
+        Integer index = indexes.get(key);
+        return index != null ? index : -1;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(keys);
+    }
+}
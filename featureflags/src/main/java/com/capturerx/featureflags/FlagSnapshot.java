@@ -0,0 +1,59 @@
+package com.capturerx.featureflags;
+
+import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.LDValueType;
+
+/**
+ * Flag values evaluated once for a context, see FFClient.snapshot.  Every read of the snapshot sees the same
+ * values for the rest of the request or record, reads are an index lookup in the FlagSet and an array read.
+ * Flags that are unknown, not in the set or of another type return the default.
+ */
+public final class FlagSnapshot {
+
+    private final FlagSet flags;
+    private final LDValue[] values;
+
+    FlagSnapshot(FlagSet flags, LDValue[] values) {
+        this.flags = flags;
+        this.values = values;
+    }
+
+    public FlagSet getFlags() {
+        return flags;
+    }
+
+    // LDValue.ofNull() for a flag not in the snapshot
+    public LDValue getValue(String key) {
+        int index = flags.indexOf(key);
+        return index >= 0 ? values[index] : LDValue.ofNull();
+    }
+
+    public String getString(String key, String dflt) {
+        LDValue value = getValue(key);
+        return value.getType() == LDValueType.STRING ? value.stringValue() : dflt;
+    }
+
+    public Integer getInteger(String key, Integer dflt) {
+        LDValue value = getValue(key);
+        return value.isNumber() ? Integer.valueOf(value.intValue()) : dflt;
+    }
+
+    public Double getDouble(String key, Double dflt) {
+        LDValue value = getValue(key);
+        return value.isNumber() ? Double.valueOf(value.doubleValue()) : dflt;
+    }
+
+    public Boolean getBoolean(String key, Boolean dflt) {
+        LDValue value = getValue(key);
+        return value.getType() == LDValueType.BOOLEAN ? Boolean.valueOf(value.booleanValue()) : dflt;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < values.length; i++) {
+            sb.append(i > 0 ? ", " : "").append(flags.getKey(i)).append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -3,8 +3,16 @@ package com.capturerx.featureflags;
 import com.launchdarkly.sdk.EvaluationDetail;
 import com.launchdarkly.sdk.EvaluationReason;
 import com.launchdarkly.sdk.LDContext;
+import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.server.FeatureFlagsState;
+import com.launchdarkly.sdk.server.FlagsStateOption;
 import com.launchdarkly.sdk.server.LDClient;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider;
+import com.launchdarkly.sdk.server.interfaces.FlagChangeEvent;
+import com.launchdarkly.sdk.server.interfaces.FlagChangeListener;
+import com.launchdarkly.sdk.server.interfaces.FlagTracker;
+import com.launchdarkly.sdk.server.interfaces.FlagValueChangeEvent;
+import com.launchdarkly.sdk.server.interfaces.FlagValueChangeListener;
 import com.launchdarkly.sdk.server.interfaces.LDClientInterface;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -20,13 +28,16 @@ import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Timer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -312,6 +323,7 @@ class FeatureFlagsTest {
         when(stringDetail.getValue()).thenReturn(DEF_STR);
         String detailStr = String.format("{%s,%d,%s}", DEF_STR, 0, EvaluationReason.error(EvaluationReason.ErrorKind.EXCEPTION));
         when(stringDetail.toString()).thenReturn(detailStr);
+        when(stringDetail.getReason()).thenReturn(EvaluationReason.error(EvaluationReason.ErrorKind.EXCEPTION));
 
         String result = ffServiceSpy.getClient().getStringVariation(FLAG_KEY, DEF_STR);
 
@@ -357,6 +369,7 @@ class FeatureFlagsTest {
         when(intDetail.getValue()).thenReturn(DEF_INT);
         String detailStr = String.format("{%d,%d,%s}", DEF_INT, 0, EvaluationReason.error(EvaluationReason.ErrorKind.EXCEPTION));
         when(intDetail.toString()).thenReturn(detailStr);
+        when(intDetail.getReason()).thenReturn(EvaluationReason.error(EvaluationReason.ErrorKind.EXCEPTION));
 
         Integer result = ffServiceSpy.getClient().getIntegerVariation(FLAG_KEY, DEF_INT);
 
@@ -376,8 +389,6 @@ class FeatureFlagsTest {
         doReturn(ldClient).when(ffServiceSpy).getLDClient();
         when(ldClient.intVariationDetail(matches(FLAG_KEY), any(LDContext.class), anyInt())).thenReturn(intDetail);
         when(intDetail.getValue()).thenReturn(CACHED_INT);
-        String detailStr = String.format("{%d,%d,%s}", CACHED_INT, 0, EvaluationReason.fallthrough());
-        when(intDetail.toString()).thenReturn(detailStr);
 
         Integer result = ffServiceSpy.getClient().getIntegerVariation(FLAG_KEY, DEF_INT);
 
@@ -398,6 +409,7 @@ class FeatureFlagsTest {
         when(doubleDetail.getValue()).thenReturn(DEF_DBL);
         String detailStr = String.format("{%f,%d,%s}", DEF_DBL, 0, EvaluationReason.error(EvaluationReason.ErrorKind.EXCEPTION));
         when(doubleDetail.toString()).thenReturn(detailStr);
+        when(doubleDetail.getReason()).thenReturn(EvaluationReason.error(EvaluationReason.ErrorKind.EXCEPTION));
 
         Double result = ffServiceSpy.getClient().getDoubleVariation(FLAG_KEY, DEF_DBL);
 
@@ -417,8 +429,6 @@ class FeatureFlagsTest {
         doReturn(ldClient).when(ffServiceSpy).getLDClient();
         when(ldClient.doubleVariationDetail(matches(FLAG_KEY), any(LDContext.class), anyDouble())).thenReturn(doubleDetail);
         when(doubleDetail.getValue()).thenReturn(CACHED_DBL);
-        String detailStr = String.format("{%f,%d,%s}", CACHED_DBL, 0, EvaluationReason.fallthrough());
-        when(doubleDetail.toString()).thenReturn(detailStr);
 
         Double result = ffServiceSpy.getClient().getDoubleVariation(FLAG_KEY, DEF_DBL);
 
@@ -439,6 +449,7 @@ class FeatureFlagsTest {
         when(booleanDetail.getValue()).thenReturn(DEF_BOOL);
         String detailStr = String.format("{%s,%d,%s}", DEF_BOOL, 0, EvaluationReason.error(EvaluationReason.ErrorKind.EXCEPTION));
         when(booleanDetail.toString()).thenReturn(detailStr);
+        when(booleanDetail.getReason()).thenReturn(EvaluationReason.error(EvaluationReason.ErrorKind.EXCEPTION));
 
         Boolean result = ffServiceSpy.getClient().getBooleanVariation(FLAG_KEY, DEF_BOOL);
 
@@ -458,8 +469,6 @@ class FeatureFlagsTest {
         doReturn(ldClient).when(ffServiceSpy).getLDClient();
         when(ldClient.boolVariationDetail(matches(FLAG_KEY), any(LDContext.class), anyBoolean())).thenReturn(booleanDetail);
         when(booleanDetail.getValue()).thenReturn(CACHED_BOOL);
-        String detailStr = String.format("{%s,%d,%s}", CACHED_BOOL, 0, EvaluationReason.fallthrough());
-        when(booleanDetail.toString()).thenReturn(detailStr);
 
         Boolean result = ffServiceSpy.getClient().getBooleanVariation(FLAG_KEY, DEF_BOOL);
 
@@ -469,4 +478,230 @@ class FeatureFlagsTest {
 
     }
 
+    @Test
+    void testGetUser_contextsCachedPerUsername() {
+        LDContext dflt = ffService.getUser();
+        assertEquals(FeatureFlags.DEFAULT_USER_KEY, dflt.getKey());
+        assertSame(dflt, ffService.getUser());
+
+        MDC.put(USER_NAME, LOGIN);
+        try {
+            LDContext user = ffService.getUser();
+            assertEquals(LOGIN, user.getKey());
+            assertSame(user, ffService.getUser());
+        } finally {
+            MDC.remove(USER_NAME);
+        }
+        assertSame(dflt, ffService.getUser());
+    }
+
+    @Test
+    void testGetUser_contextCacheBounded() {
+        ReflectionTestUtils.setField(ffService, "contextCacheSize", 10);
+        try {
+            for (int i = 0; i < 100; i++) {
+                MDC.put(USER_NAME, "user" + i);
+                assertEquals("user" + i, ffService.getUser().getKey());
+            }
+        } finally {
+            MDC.remove(USER_NAME);
+        }
+        assertEquals(10, ffService.getCachedContextCount());
+    }
+
+    @Test
+    void testGetUser_contextCacheEvictsUnderChurn() {
+        ReflectionTestUtils.setField(ffService, "contextCacheSize", 3);
+        try {
+            for (int i = 0; i < 10; i++) {
+                MDC.put(USER_NAME, "cold" + i);
+                assertEquals("cold" + i, ffService.getUser().getKey());
+                MDC.put(USER_NAME, "hot");
+                assertEquals("hot", ffService.getUser().getKey());
+                assertTrue(ffService.getCachedContextCount() <= 3);
+            }
+        } finally {
+            MDC.remove(USER_NAME);
+        }
+        assertEquals(3, ffService.getCachedContextCount());
+    }
+
+    @Mock
+    FlagTracker flagTracker;
+
+    @Test
+    void testDetailLogging_cachedAndUpdatedByTracker() {
+        FeatureFlags ffServiceSpy = Mockito.spy(ffService);
+
+        doReturn(ldClient).when(ffServiceSpy).getLDClient();
+        when(ldClient.getFlagTracker()).thenReturn(flagTracker);
+        ArgumentCaptor<FlagValueChangeListener> listener = ArgumentCaptor.forClass(FlagValueChangeListener.class);
+        when(flagTracker.addFlagValueChangeListener(matches(FeatureFlags.DETAIL_LOGGING_KEY), any(LDContext.class), listener.capture()))
+                .thenReturn(mock(FlagChangeListener.class));
+        when(ldClient.boolVariation(matches(FeatureFlags.DETAIL_LOGGING_KEY), any(LDContext.class), anyBoolean())).thenReturn(false);
+        when(ldClient.boolVariationDetail(matches(FLAG_KEY), any(LDContext.class), anyBoolean())).thenReturn(booleanDetail);
+        when(booleanDetail.getValue()).thenReturn(CACHED_BOOL);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(CACHED_BOOL, ffServiceSpy.getClient().getBooleanVariation(FLAG_KEY, DEF_BOOL));
+        }
+        verify(ldClient, times(1)).boolVariation(matches(FeatureFlags.DETAIL_LOGGING_KEY), any(LDContext.class), anyBoolean());
+        verify(mockLogger, never()).info(anyString());
+
+        listener.getValue().onFlagValueChange(new FlagValueChangeEvent(FeatureFlags.DETAIL_LOGGING_KEY, LDValue.of(false), LDValue.of(true)));
+        ffServiceSpy.getClient().getBooleanVariation(FLAG_KEY, DEF_BOOL);
+        verify(mockLogger, times(1)).info(anyString());
+        verify(ldClient, times(1)).boolVariation(matches(FeatureFlags.DETAIL_LOGGING_KEY), any(LDContext.class), anyBoolean());
+    }
+
+    @Test
+    void testBooleanFlag_handleUpdatedByTracker() {
+        FeatureFlags ffServiceSpy = Mockito.spy(ffService);
+
+        doReturn(ldClient).when(ffServiceSpy).getLDClient();
+        when(ldClient.getFlagTracker()).thenReturn(flagTracker);
+        ArgumentCaptor<FlagValueChangeListener> listener = ArgumentCaptor.forClass(FlagValueChangeListener.class);
+        when(flagTracker.addFlagValueChangeListener(matches(FLAG_KEY), any(LDContext.class), listener.capture()))
+                .thenReturn(mock(FlagChangeListener.class));
+        when(ldClient.boolVariation(matches(FLAG_KEY), any(LDContext.class), anyBoolean())).thenReturn(false, true);
+
+        FFClient client = ffServiceSpy.getClient();
+        FlagHandle<Boolean> handle = client.booleanFlag(FLAG_KEY, DEF_BOOL);
+        assertEquals(Boolean.FALSE, handle.get());
+        assertSame(handle, client.booleanFlag(FLAG_KEY, DEF_BOOL));
+        assertEquals(Boolean.FALSE, handle.get());
+
+        listener.getValue().onFlagValueChange(new FlagValueChangeEvent(FLAG_KEY, LDValue.of(false), LDValue.of(true)));
+        assertEquals(Boolean.TRUE, handle.get());
+        verify(flagTracker, times(1)).addFlagValueChangeListener(matches(FLAG_KEY), any(LDContext.class), any());
+        verify(ldClient, times(2)).boolVariation(matches(FLAG_KEY), any(LDContext.class), anyBoolean());
+    }
+
+    @Test
+    void testSnapshot_declaredFlags() {
+        ArgumentCaptor<String> logMsgCapture = getLoggerCaptor();
+        FeatureFlags ffServiceSpy = Mockito.spy(ffService);
+
+        doReturn(ldClient).when(ffServiceSpy).getLDClient();
+        when(ldClient.jsonValueVariationDetail(matches("flag-bool"), any(LDContext.class), any(LDValue.class)))
+                .thenReturn(EvaluationDetail.fromValue(LDValue.of(true), 0, EvaluationReason.fallthrough()));
+        when(ldClient.jsonValueVariationDetail(matches("flag-int"), any(LDContext.class), any(LDValue.class)))
+                .thenReturn(EvaluationDetail.fromValue(LDValue.of(7), 0, EvaluationReason.fallthrough()));
+        when(ldClient.jsonValueVariationDetail(matches("flag-missing"), any(LDContext.class), any(LDValue.class)))
+                .thenReturn(EvaluationDetail.fromValue(LDValue.ofNull(), EvaluationDetail.NO_VARIATION,
+                        EvaluationReason.error(EvaluationReason.ErrorKind.FLAG_NOT_FOUND)));
+        FlagSet flags = FlagSet.of("flag-bool", "flag-int", "flag-missing");
+
+        FlagSnapshot snapshot = ffServiceSpy.getClient().snapshot(flags);
+
+        assertEquals(Boolean.TRUE, snapshot.getBoolean("flag-bool", DEF_BOOL));
+        assertEquals(7, snapshot.getInteger("flag-int", DEF_INT));
+        assertEquals(7.0, snapshot.getDouble("flag-int", DEF_DBL));
+        assertEquals(DEF_STR, snapshot.getString("flag-int", DEF_STR));
+        assertEquals(DEF_BOOL, snapshot.getBoolean("flag-missing", DEF_BOOL));
+        assertEquals(DEF_BOOL, snapshot.getBoolean("not-declared", DEF_BOOL));
+        // evaluated once, the snapshot is what later reads see
+        snapshot.getBoolean("flag-bool", DEF_BOOL);
+        verify(ldClient, times(1)).jsonValueVariationDetail(matches("flag-bool"), any(LDContext.class), any(LDValue.class));
+        // the error reason is logged like a get*Variation call
+        verify(mockLogger, times(1)).error(anyString());
+        assertTrue(logMsgCapture.getValue().contains("flag-missing"));
+        assertTrue(logMsgCapture.getValue().contains("FLAG_NOT_FOUND"));
+    }
+
+    @Test
+    void testSnapshot_allFlagsState() {
+        ArgumentCaptor<String> logMsgCapture = getLoggerCaptor();
+        FeatureFlags ffServiceSpy = Mockito.spy(ffService);
+
+        doReturn(ldClient).when(ffServiceSpy).getLDClient();
+        FeatureFlagsState state = FeatureFlagsState.builder(FlagsStateOption.WITH_REASONS)
+                .add("flag-str", LDValue.of(CACHED_STR), 0, EvaluationReason.fallthrough(), 1, false, null)
+                .add("flag-bool", LDValue.of(true), 0, EvaluationReason.fallthrough(), 1, false, null)
+                .add("flag-broken", LDValue.ofNull(), null, EvaluationReason.error(EvaluationReason.ErrorKind.MALFORMED_FLAG), 1, false, null)
+                .build();
+        when(ldClient.allFlagsState(any(LDContext.class), any(FlagsStateOption.class))).thenReturn(state);
+
+        FlagSnapshot snapshot = ffServiceSpy.getClient().snapshot();
+
+        assertEquals(3, snapshot.getFlags().size());
+        assertEquals(CACHED_STR, snapshot.getString("flag-str", DEF_STR));
+        assertEquals(Boolean.TRUE, snapshot.getBoolean("flag-bool", DEF_BOOL));
+        verify(ldClient, times(1)).allFlagsState(any(LDContext.class), eq(FlagsStateOption.WITH_REASONS));
+        verify(mockLogger, times(1)).error(anyString());
+        assertTrue(logMsgCapture.getValue().contains("flag-broken"));
+        assertTrue(logMsgCapture.getValue().contains("MALFORMED_FLAG"));
+    }
+
+    record RetryConfig(int attempts, List<String> topics) {}
+
+    @Mock
+    EvaluationDetail<LDValue> jsonDetail;
+
+    @Test
+    void testGetJsonVariation_parsedOncePerChange() {
+        FeatureFlags ffServiceSpy = Mockito.spy(ffService);
+
+        doReturn(ldClient).when(ffServiceSpy).getLDClient();
+        when(ldClient.getFlagTracker()).thenReturn(flagTracker);
+        ArgumentCaptor<FlagChangeListener> listener = ArgumentCaptor.forClass(FlagChangeListener.class);
+        doNothing().when(flagTracker).addFlagChangeListener(listener.capture());
+        when(ldClient.jsonValueVariationDetail(matches(FLAG_KEY), any(LDContext.class), any(LDValue.class))).thenReturn(jsonDetail);
+        when(jsonDetail.getVariationIndex()).thenReturn(1);
+        when(jsonDetail.getValue()).thenReturn(LDValue.parse("{\"attempts\":3,\"topics\":[\"a\",\"b\"]}"));
+        RetryConfig dflt = new RetryConfig(0, List.of());
+
+        FFClient client = ffServiceSpy.getClient();
+        RetryConfig config = client.getJsonVariation(FLAG_KEY, RetryConfig.class, dflt);
+        assertEquals(new RetryConfig(3, List.of("a", "b")), config);
+        assertSame(config, client.getJsonVariation(FLAG_KEY, RetryConfig.class, dflt));
+        assertEquals(1, ffServiceSpy.getCachedJsonValueCount(FLAG_KEY));
+
+        listener.getValue().onFlagChange(new FlagChangeEvent(FLAG_KEY));
+        assertEquals(0, ffServiceSpy.getCachedJsonValueCount(FLAG_KEY));
+        when(jsonDetail.getValue()).thenReturn(LDValue.parse("{\"attempts\":5,\"topics\":[]}"));
+        assertEquals(new RetryConfig(5, List.of()), client.getJsonVariation(FLAG_KEY, RetryConfig.class, dflt));
+        verify(flagTracker, times(1)).addFlagChangeListener(any());
+    }
+
+    static class MutableRetryConfig {
+        public int attempts;
+        public List<String> topics;
+    }
+
+    @Test
+    void testGetJsonVariation_beanBoundOnceAndUnknownFieldsIgnored() {
+        FeatureFlags ffServiceSpy = Mockito.spy(ffService);
+
+        doReturn(ldClient).when(ffServiceSpy).getLDClient();
+        when(ldClient.getFlagTracker()).thenReturn(flagTracker);
+        when(ldClient.jsonValueVariationDetail(matches(FLAG_KEY), any(LDContext.class), any(LDValue.class))).thenReturn(jsonDetail);
+        when(jsonDetail.getVariationIndex()).thenReturn(1);
+        when(jsonDetail.getValue()).thenReturn(LDValue.parse("{\"attempts\":3,\"topics\":[\"a\"],\"addedLater\":true}"));
+
+        FFClient client = ffServiceSpy.getClient();
+        MutableRetryConfig first = client.getJsonVariation(FLAG_KEY, MutableRetryConfig.class, null);
+
+        assertSame(first, client.getJsonVariation(FLAG_KEY, MutableRetryConfig.class, null));
+        assertEquals(3, first.attempts);
+        assertEquals(List.of("a"), first.topics);
+        assertEquals(1, ffServiceSpy.getCachedJsonValueCount(FLAG_KEY));
+    }
+
+    @Test
+    void testGetJsonVariation_defaultOnErrorOrBadJson() {
+        ArgumentCaptor<String> logMsgCapture = getLoggerCaptor();
+        FeatureFlags ffServiceSpy = Mockito.spy(ffService);
+
+        doReturn(ldClient).when(ffServiceSpy).getLDClient();
+        when(ldClient.jsonValueVariationDetail(matches(FLAG_KEY), any(LDContext.class), any(LDValue.class))).thenReturn(jsonDetail);
+        when(jsonDetail.getVariationIndex()).thenReturn(EvaluationDetail.NO_VARIATION, 0);
+        when(jsonDetail.getValue()).thenReturn(LDValue.of("not an object"));
+        RetryConfig dflt = new RetryConfig(0, List.of());
+
+        assertSame(dflt, ffServiceSpy.getClient().getJsonVariation(FLAG_KEY, RetryConfig.class, dflt));
+        assertSame(dflt, ffServiceSpy.getClient().getJsonVariation(FLAG_KEY, RetryConfig.class, dflt));
+        assertTrue(logMsgCapture.getAllValues().get(0).contains("value not a"));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,318 @@
+package dev.dccok.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local read-only view of a compacted topic for lookups of reference data.  Values are kept off-heap in
+ * direct buffer arenas, the key index stays on-heap.  On close the view is written to the snapshot file,
+ * at start the snapshot is memory mapped (values are read straight from the mapping) and only the records
+ * produced since the snapshot are consumed.  isReady() turns true once the end offsets seen at start are reached.
+ *
+ * Declare one bean per topic, start/stop follow the application context.  The client settings (bootstrap servers,
+ * security protocol, sasl, ssl...) are those of the application's consumers, e.g. from Spring Boot's KafkaProperties:
+ *   new CompactedTopicView("drug_reference", kafkaProperties.buildConsumerProperties(), Path.of("/data/drug_reference.snap"))
+ */
+@Slf4j
+public class CompactedTopicView implements SmartLifecycle, AutoCloseable {
+
+    private static final int SNAPSHOT_MAGIC = 0x4B435456;
+    private static final int ARENA_SIZE = 1 << 20;
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+
+    private final String topic;
+    private final Consumer<String, byte[]> consumer;
+    private final Path snapshotFile;
+    private final Map<String, ByteBuffer> values = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Long> positions = new HashMap<>();
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private Map<TopicPartition, Long> catchUpOffsets;
+    private ByteBuffer arena;
+    private long allocatedBytes;
+    private long liveBytes;
+    private Thread poller;
+    private volatile boolean running;
+
+    public CompactedTopicView(String topic, String bootstrapServers, Path snapshotFile) {
+        this(topic, Map.of(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers), snapshotFile);
+    }
+
+    public CompactedTopicView(String topic, Map<String, Object> clientConfig, Path snapshotFile) {
+        this(topic, new KafkaConsumer<>(consumerProperties(clientConfig)), snapshotFile);
+    }
+
+    CompactedTopicView(String topic, Consumer<String, byte[]> consumer, Path snapshotFile) {
+        this.topic = topic;
+        this.consumer = consumer;
+        this.snapshotFile = snapshotFile;
+    }
+
+    // the partitions are assigned and read from the start or the snapshot, no group and no commits
+    static Properties consumerProperties(Map<String, Object> clientConfig) {
+        Properties props = new Properties();
+        props.putAll(clientConfig);
+        props.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        props.remove(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        return props;
+    }
+
+    public byte[] get(String key) {
+        ByteBuffer value = values.get(key);
+        if (value == null) return null;
+        byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes);
+        return bytes;
+    }
+
+    public <T> T get(String key, Class<T> claz) {
+        byte[] bytes = get(key);
+        return bytes != null ? KafkaUtil.fromJsonBytes(bytes, claz) : null;
+    }
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    public boolean awaitReady(Duration timeout) throws InterruptedException {
+        return ready.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        List<TopicPartition> partitions = new ArrayList<>();
+        for (PartitionInfo info : consumer.partitionsFor(topic)) {
+            partitions.add(new TopicPartition(topic, info.partition()));
+        }
+        consumer.assign(partitions);
+        Map<TopicPartition, Long> restored = restoreSnapshot();
+        Map<TopicPartition, Long> beginning = consumer.beginningOffsets(partitions);
+        boolean usable = restored != null && partitions.stream()
+                .allMatch(tp -> restored.containsKey(tp) && restored.get(tp) >= beginning.get(tp));
+        if (usable) {
+            restored.forEach(consumer::seek);
+            positions.putAll(restored);
+            log.info("Restored {} entries of {} from snapshot", values.size(), topic);
+        } else {
+            if (restored != null) {
+                log.warn("Snapshot of {} is older than the topic log start, reloading", topic);
+                values.clear();
+                allocatedBytes = 0;
+                liveBytes = 0;
+            }
+            consumer.seekToBeginning(partitions);
+            beginning.forEach(positions::put);
+        }
+        catchUpOffsets = consumer.endOffsets(partitions);
+        checkReady();
+        running = true;
+        poller = new Thread(this::pollLoop, "compacted-view-" + topic);
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    @Override
+    public void stop() {
+        close();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!running) return;
+        running = false;
+        consumer.wakeup();
+        try {
+            poller.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeSnapshot();
+        consumer.close();
+    }
+
+    private void pollLoop() {
+        try {
+            while (running) {
+                for (ConsumerRecord<String, byte[]> rec : consumer.poll(POLL_TIMEOUT)) {
+                    apply(rec);
+                }
+                // positions rather than record offsets, compaction and transaction markers leave gaps
+                for (TopicPartition tp : catchUpOffsets.keySet()) {
+                    positions.put(tp, consumer.position(tp));
+                }
+                if (!isReady()) {
+                    checkReady();
+                }
+            }
+        } catch (WakeupException e) {
+            // closing
+        } catch (Exception e) {
+            log.error("Compacted topic view of {} stopped", topic, e);
+        }
+    }
+
+    private void apply(ConsumerRecord<String, byte[]> rec) {
+        if (rec.key() == null) return;
+        ByteBuffer previous = rec.value() == null ? values.remove(rec.key()) : values.put(rec.key(), store(rec.value()));
+        if (previous != null) {
+            liveBytes -= previous.remaining();
+        }
+        if (allocatedBytes > 2L * ARENA_SIZE && liveBytes < allocatedBytes / 2) {
+            compact();
+        }
+    }
+
+    private void checkReady() {
+        for (Map.Entry<TopicPartition, Long> end : catchUpOffsets.entrySet()) {
+            if (positions.getOrDefault(end.getKey(), 0L) < end.getValue()) return;
+        }
+        if (isReady()) return;
+        ready.countDown();
+        log.info("Compacted topic view of {} ready with {} entries", topic, values.size());
+    }
+
+    // values are slices of a shared direct buffer, replaced values are reclaimed by compact()
+    private ByteBuffer store(byte[] value) {
+        if (arena == null || arena.remaining() < value.length) {
+            arena = ByteBuffer.allocateDirect(Math.max(ARENA_SIZE, value.length));
+            allocatedBytes += arena.capacity();
+        }
+        ByteBuffer slice = arena.slice(arena.position(), value.length);
+        arena.put(value);
+        liveBytes += value.length;
+        return slice.asReadOnlyBuffer();
+    }
+
+    private void compact() {
+        arena = null;
+        allocatedBytes = 0;
+        liveBytes = 0;
+        for (Map.Entry<String, ByteBuffer> entry : values.entrySet()) {
+            byte[] bytes = new byte[entry.getValue().remaining()];
+            entry.getValue().duplicate().get(bytes);
+            entry.setValue(store(bytes));
+        }
+    }
+
+    private Map<TopicPartition, Long> restoreSnapshot() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) return null;
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != SNAPSHOT_MAGIC) {
+                log.warn("Ignoring {}, not a snapshot", snapshotFile);
+                return null;
+            }
+            Map<TopicPartition, Long> offsets = new HashMap<>();
+            int partitionCount = mapped.getInt();
+            for (int i = 0; i < partitionCount; i++) {
+                offsets.put(new TopicPartition(topic, mapped.getInt()), mapped.getLong());
+            }
+            int entryCount = mapped.getInt();
+            for (int i = 0; i < entryCount; i++) {
+                byte[] key = new byte[mapped.getInt()];
+                mapped.get(key);
+                int length = mapped.getInt();
+                values.put(new String(key, StandardCharsets.UTF_8), mapped.slice(mapped.position(), length).asReadOnlyBuffer());
+                mapped.position(mapped.position() + length);
+                // the mapping holds the restored values like an arena, compact() moves them off it
+                allocatedBytes += length;
+                liveBytes += length;
+            }
+            return offsets;
+        } catch (Exception e) {
+            log.error("Unable to restore snapshot {}", snapshotFile, e);
+            values.clear();
+            allocatedBytes = 0;
+            liveBytes = 0;
+            return null;
+        }
+    }
+
+    private void writeSnapshot() {
+        if (snapshotFile == null || !isReady()) return;
+        // write aside and rename, the current file may still be mapped by this view
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            if (snapshotFile.getParent() != null) {
+                Files.createDirectories(snapshotFile.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(positions.size());
+                for (Map.Entry<TopicPartition, Long> position : positions.entrySet()) {
+                    out.writeInt(position.getKey().partition());
+                    out.writeLong(position.getValue());
+                }
+                out.writeInt(values.size());
+                for (Map.Entry<String, ByteBuffer> entry : values.entrySet()) {
+                    byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(key.length);
+                    out.write(key);
+                    byte[] value = new byte[entry.getValue().remaining()];
+                    entry.getValue().duplicate().get(value);
+                    out.writeInt(value.length);
+                    out.write(value);
+                }
+            }
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Wrote snapshot of {} with {} entries to {}", topic, values.size(), snapshotFile);
+        } catch (IOException e) {
+            log.error("Unable to write snapshot {}", snapshotFile, e);
+        }
+    }
+}
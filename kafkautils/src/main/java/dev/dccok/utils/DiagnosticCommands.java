@@ -0,0 +1,237 @@
+package dev.dccok.utils;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.env.Environment;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Diagnostic commands received on the per instance logLevelCommandChannel (LogLevelAdjustmentMessage.command), run
+ * off the consumer thread and answered with a DiagnosticReplyMessage on the reply destination.
+ *   jfrStart         flight recording with the profile setting (default, profile) for ttlMs (default 60s),
+ *                    written to kafkautil.diagnostics.dir when it ends or is stopped
+ *   jfrStop          ends the running recordings early
+ *   threadDump       Thread.print of the instance
+ *   classHistogram   GC.class_histogram of the instance, triggers a full GC
+ *   logCost          the top loggers by logged bytes (top, default 20), needs kafkautil.logcost.enabled
+ * Commands are ignored unless enabled:
+ *   kafkautil.diagnostics.enabled = true
+ *   kafkautil.diagnostics.reply-destination = log_level_adjustment_reply
+ *   kafkautil.diagnostics.reply-destinations = ops_replies   (other destinations a command's replyTo may name)
+ *   kafkautil.diagnostics.dir = /tmp                    (default java.io.tmpdir)
+ *   kafkautil.diagnostics.max-recording-ms = 900000
+ *   kafkautil.diagnostics.max-output-chars = 500000     (replies stay under the default max.request.size)
+ */
+@Slf4j
+@Component
+public class DiagnosticCommands implements ApplicationContextAware {
+
+    public static final String JFR_START = "jfrStart";
+    public static final String JFR_STOP = "jfrStop";
+    public static final String THREAD_DUMP = "threadDump";
+    public static final String CLASS_HISTOGRAM = "classHistogram";
+    public static final String LOG_COST = "logCost";
+
+    private static final String PREFIX = "kafkautil.diagnostics.";
+    private static final String INSTANCE_ID_KEY = "kafkautil.instance-id";
+    private static final String DIAGNOSTIC_MBEAN = "com.sun.management:type=DiagnosticCommand";
+    private static final long DEFAULT_RECORDING_MS = 60000L;
+
+    @Autowired
+    private KafkaUtil kafkaUtil;
+
+    @Autowired(required = false)
+    private LoggerCostMeter loggerCostMeter;
+
+    private boolean enabled;
+    private String appName;
+    private String instanceId;
+    private String replyDestination = "log_level_adjustment_reply";
+    private Set<String> allowedReplyDestinations = Set.of();
+    private Path dir = Path.of(System.getProperty("java.io.tmpdir"));
+    private long maxRecordingMs = 900000L;
+    private int maxOutputChars = 500000;
+    private final Map<String, Recording> recordings = new ConcurrentHashMap<>();
+    private ScheduledExecutorService runner;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        Environment env = applicationContext.getEnvironment();
+        enabled = Boolean.parseBoolean(env.getProperty(PREFIX + "enabled"));
+        appName = env.getProperty("info.app.name");
+        instanceId = resolveInstanceId(env);
+        replyDestination = env.getProperty(PREFIX + "reply-destination", replyDestination);
+        allowedReplyDestinations = StringUtils.commaDelimitedListToSet(env.getProperty(PREFIX + "reply-destinations"))
+                .stream().map(String::trim).collect(Collectors.toUnmodifiableSet());
+        String configuredDir = env.getProperty(PREFIX + "dir");
+        if (StringUtils.hasText(configuredDir)) {
+            dir = Path.of(configuredDir);
+        }
+        maxRecordingMs = env.getProperty(PREFIX + "max-recording-ms", Long.class, maxRecordingMs);
+        maxOutputChars = env.getProperty(PREFIX + "max-output-chars", Integer.class, maxOutputChars);
+    }
+
+    // kafkautil.instance-id, else the pod name (HOSTNAME) or the host name
+    static String resolveInstanceId(Environment env) {
+        String id = env.getProperty(INSTANCE_ID_KEY);
+        if (!StringUtils.hasText(id)) {
+            id = env.getProperty("HOSTNAME");
+        }
+        if (!StringUtils.hasText(id)) {
+            try {
+                id = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                id = "unknown";
+            }
+        }
+        return id;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    // returns at once, the reply is sent when the command has run
+    public void submit(LogLevelAdjustmentMessage message) {
+        if (!enabled) {
+            log.warn("Diagnostic command {} ignored, {}enabled is not set", message.getCommand(), PREFIX);
+            return;
+        }
+        getRunner().execute(() -> execute(message));
+    }
+
+    void execute(LogLevelAdjustmentMessage message) {
+        String command = message.getCommand();
+        DiagnosticReplyMessage reply = new DiagnosticReplyMessage(appName, instanceId, command, true, null, null);
+        try {
+            switch (command) {
+                case JFR_START -> startRecording(message, reply);
+                case JFR_STOP -> {
+                    if (recordings.isEmpty()) throw new IllegalStateException("No recording running");
+                    recordings.keySet().forEach(name -> stopRecording(name, message.getReplyTo()));
+                    return;
+                }
+                case THREAD_DUMP -> reply.setOutput(truncate(diagnosticCommand("threadPrint")));
+                case CLASS_HISTOGRAM -> reply.setOutput(truncate(diagnosticCommand("gcClassHistogram")));
+                case LOG_COST -> {
+                    if (loggerCostMeter == null) throw new IllegalStateException("LoggerCostMeter not available");
+                    reply.setOutput(truncate(loggerCostMeter.report(message.getTop() != null ? message.getTop() : 20)));
+                }
+                default -> throw new IllegalArgumentException("Unknown diagnostic command " + command);
+            }
+        } catch (Exception e) {
+            log.error("Diagnostic command {} failed", command, e);
+            reply.setSuccess(false);
+            reply.setOutput(e.toString());
+        }
+        reply(message.getReplyTo(), reply);
+    }
+
+    private void startRecording(LogLevelAdjustmentMessage message, DiagnosticReplyMessage reply) throws Exception {
+        String profile = StringUtils.hasText(message.getProfile()) ? message.getProfile() : "default";
+        long durationMs = message.getTtlMs() != null && message.getTtlMs() > 0 ? message.getTtlMs() : DEFAULT_RECORDING_MS;
+        durationMs = Math.min(durationMs, maxRecordingMs);
+        String name = appName + "-" + instanceId + "-" + System.currentTimeMillis();
+        Files.createDirectories(dir);
+        Path file = dir.resolve(name + ".jfr");
+        Recording recording = new Recording(Configuration.getConfiguration(profile));
+        recording.setName(name);
+        recording.setToDisk(true);
+        recording.setDestination(file);
+        recording.start();
+        recordings.put(name, recording);
+        getRunner().schedule(() -> stopRecording(name, message.getReplyTo()), durationMs, TimeUnit.MILLISECONDS);
+        reply.setOutput("Recording " + profile + " for " + Duration.ofMillis(durationMs));
+        reply.setFile(file.toString());
+        log.info("Started JFR recording {} ({}) for {}ms to {}", name, profile, durationMs, file);
+    }
+
+    // the recording is written to its destination when stopped
+    private void stopRecording(String name, String replyTo) {
+        Recording recording = recordings.remove(name);
+        if (recording == null) return;
+        DiagnosticReplyMessage reply = new DiagnosticReplyMessage(appName, instanceId, JFR_STOP, true, null,
+                String.valueOf(recording.getDestination()));
+        try {
+            recording.stop();
+            reply.setOutput("Recording written, " + Files.size(recording.getDestination()) + " bytes");
+            log.info("Stopped JFR recording {}, written to {}", name, recording.getDestination());
+        } catch (Exception e) {
+            log.error("Unable to stop JFR recording {}", name, e);
+            reply.setSuccess(false);
+            reply.setOutput(e.toString());
+        } finally {
+            recording.close();
+        }
+        reply(replyTo, reply);
+    }
+
+    private static String diagnosticCommand(String operation) throws Exception {
+        return (String) ManagementFactory.getPlatformMBeanServer().invoke(new ObjectName(DIAGNOSTIC_MBEAN), operation,
+                new Object[]{new String[0]}, new String[]{String[].class.getName()});
+    }
+
+    private String truncate(String output) {
+        if (output == null || output.length() <= maxOutputChars) return output;
+        return output.substring(0, maxOutputChars) + "\n... truncated, " + output.length() + " chars";
+    }
+
+    // replyTo comes from the message, only configured destinations are used
+    private void reply(String replyTo, DiagnosticReplyMessage reply) {
+        String destination = replyDestination;
+        if (StringUtils.hasText(replyTo) && !replyTo.equals(replyDestination)) {
+            if (allowedReplyDestinations.contains(replyTo)) {
+                destination = replyTo;
+            } else {
+                log.warn("Reply destination {} not in {}reply-destinations, replying on {}", replyTo, PREFIX, replyDestination);
+            }
+        }
+        try {
+            kafkaUtil.send(destination, MessageBuilder.withPayload(reply).build());
+        } catch (Exception e) {
+            log.error("Unable to send the {} reply to {}", reply.getCommand(), destination, e);
+        }
+    }
+
+    private synchronized ScheduledExecutorService getRunner() {
+        if (runner == null) {
+            runner = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "kafka-diagnostics");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return runner;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        recordings.keySet().forEach(name -> stopRecording(name, null));
+        if (runner != null) {
+            runner.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package dev.dccok.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DiagnosticReplyMessage {
+    String applicationName;
+    String instanceId;
+    String command;
+    boolean success;
+    // thread dump or histogram text, the error otherwise
+    String output;
+    // recording file on the instance for jfrStart/jfrStop
+    String file;
+}
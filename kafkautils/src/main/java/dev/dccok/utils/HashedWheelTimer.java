@@ -0,0 +1,175 @@
+package dev.dccok.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Approximate timer for large numbers of short lived timeouts.  Scheduling and cancelling are lock free,
+ * only the worker thread touches the wheel buckets.  Expired tasks run on the supplied executor
+ * (on the worker thread when none is given) so they must not block in that case.
+ */
+@Slf4j
+public class HashedWheelTimer implements AutoCloseable {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final List<Timeout>[] wheel;
+    private final int mask;
+    private final Executor executor;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = true;
+    private long tick;
+
+    public HashedWheelTimer(String name, long tickMs, int ticksPerWheel) {
+        this(name, tickMs, ticksPerWheel, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public HashedWheelTimer(String name, long tickMs, int ticksPerWheel, Executor executor) {
+        if (tickMs <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("tickMs and ticksPerWheel must be positive");
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.wheel = new List[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.executor = executor;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timer stopped");
+        }
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + unit.toNanos(Math.max(delay, 0)));
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    public int pendingCount() {
+        int count = incoming.size();
+        for (List<Timeout> bucket : wheel) {
+            synchronized (bucket) {
+                count += bucket.size();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) return;
+                }
+                continue;
+            }
+            transferIncoming();
+            expire(wheel[(int) (tick & mask)], deadline);
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.state.get() != PENDING) continue;
+            long calculated = timeout.deadlineNanos / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            List<Timeout> bucket = wheel[(int) (Math.max(calculated, tick) & mask)];
+            synchronized (bucket) { // uncontended, guards pendingCount() readers only
+                bucket.add(timeout);
+            }
+        }
+    }
+
+    private void expire(List<Timeout> bucket, long deadline) {
+        List<Timeout> due = null;
+        synchronized (bucket) {
+            Iterator<Timeout> it = bucket.iterator();
+            while (it.hasNext()) {
+                Timeout timeout = it.next();
+                if (timeout.state.get() != PENDING) {
+                    it.remove();
+                } else if (timeout.remainingRounds <= 0 && timeout.deadlineNanos <= deadline) {
+                    it.remove();
+                    if (due == null) due = new ArrayList<>();
+                    due.add(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+            }
+        }
+        if (due != null) {
+            due.forEach(this::fire);
+        }
+    }
+
+    private void fire(Timeout timeout) {
+        if (!timeout.state.compareAndSet(PENDING, EXPIRED)) return;
+        try {
+            if (executor != null) {
+                executor.execute(timeout.task);
+            } else {
+                timeout.task.run();
+            }
+        } catch (Exception e) {
+            log.error("Timer task failed", e);
+        }
+    }
+
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+    }
+}
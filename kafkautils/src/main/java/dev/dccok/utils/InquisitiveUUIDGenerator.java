@@ -7,8 +7,13 @@ import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
 import org.hibernate.id.uuid.UuidGenerator;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.util.UUID;
 
 /**
  * Based on https://stackoverflow.com/questions/76166062/custom-uuid-generator-in-hibernate
@@ -16,29 +21,62 @@ import java.lang.reflect.Method;
 @Slf4j
 public class InquisitiveUUIDGenerator  extends UuidGenerator {
 
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodHandle NO_ACCESSOR =
+            MethodHandles.dropArguments(MethodHandles.constant(Object.class, null), 0, Object.class);
+    private static final ClassValue<MethodHandle> idAccessors = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            return findIdAccessor(type);
+        }
+    };
+
+    private final boolean v7;
+    private final boolean stringId;
+
     public InquisitiveUUIDGenerator(
             InquisitiveIdGenerator config,
             Member idMember,
             CustomIdGeneratorCreationContext creationContext
     ) {
         super(getUuidGeneratorAnnotation(config.style()), idMember, creationContext);
+        v7 = config.v7();
+        stringId = String.class.equals(idMember instanceof Field field ? field.getType() : ((Method) idMember).getReturnType());
     }
 
     @Override
     public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
-
-        Object id = null;
-        if (owner != null) {
-            try {
-                Method method = owner.getClass().getMethod("getId");
-                id = method.invoke(owner);
-            } catch (Exception e) {
-                log.error(String.format("Id generation failed for %s",owner.getClass().getName()), e);
-            }
+        Object id = owner != null ? getExistingId(owner) : null;
+        if (id == null && v7) {
+            UUID uuid = UuidV7Generator.next();
+            return stringId ? uuid.toString() : uuid;
         }
         return (id != null ? id : super.generate(session, owner, currentValue, eventType));
     }
 
+    static Object getExistingId(Object owner) {
+        try {
+            return (Object) idAccessors.get(owner.getClass()).invokeExact(owner);
+        } catch (Throwable e) {
+            log.error(String.format("Id generation failed for %s", owner.getClass().getName()), e);
+            return null;
+        }
+    }
+
+    // getId of each entity class looked up once, classes without one get NO_ACCESSOR
+    private static MethodHandle findIdAccessor(Class<?> type) {
+        try {
+            Method method = type.getMethod("getId");
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method).asType(ACCESSOR_TYPE);
+        } catch (NoSuchMethodException e) {
+            log.error("No getId on {}, ids of it are always generated", type.getName());
+        } catch (Exception e) {
+            log.error(String.format("getId of %s not accessible, ids of it are always generated", type.getName()), e);
+        }
+        return NO_ACCESSOR;
+    }
+
     private static org.hibernate.annotations.UuidGenerator getUuidGeneratorAnnotation(org.hibernate.annotations.UuidGenerator.Style style) {
         return new org.hibernate.annotations.UuidGenerator() {
             @Override
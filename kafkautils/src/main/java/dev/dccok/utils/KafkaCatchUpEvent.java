@@ -0,0 +1,20 @@
+package dev.dccok.utils;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by KafkaCatchUpMode when the consumer enters (active) or leaves catch-up mode.
+ */
+@Getter
+public class KafkaCatchUpEvent extends ApplicationEvent {
+
+    private final boolean active;
+    private final long lag;
+
+    public KafkaCatchUpEvent(Object source, boolean active, long lag) {
+        super(source);
+        this.active = active;
+        this.lag = lag;
+    }
+}
@@ -0,0 +1,130 @@
+package dev.dccok.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sheds the per record overhead of KafkaUtil.commit while the consumer is far behind.  Once a partition sampled
+ * by KafkaLagSampler is kafkautil.catchup.lag-threshold records behind, commit logs only every
+ * kafkautil.catchup.log-every record, skips the produced topics log and acknowledges only every
+ * kafkautil.catchup.ack-every record of a partition (an ack commits the earlier offsets of the partition too).
+ * Held back acks are only acknowledged on the consumer thread that received them: by the next commit on that
+ * thread once catch-up mode is off or the sampler found the partition without a commit for a sample interval, and
+ * on the container's idle events (set the binding's idle-event-interval so a consumer with no records at all flushes).
+ * A held back ack is skipped when a later offset of the partition was acknowledged already.
+ * Normal mode returns when the lag drops below kafkautil.catchup.exit-lag (default a tenth of the threshold).
+ * A KafkaCatchUpEvent is published on each switch.  Off unless the threshold and kafkautil.lag.sample-interval-ms are set.
+ */
+@Slf4j
+@Component
+public class KafkaCatchUpMode implements ApplicationContextAware {
+
+    private static final String PREFIX = "kafkautil.catchup.";
+
+    private static volatile boolean active;
+    private static int logEvery = 100;
+    private static int ackEvery = 50;
+    private static final AtomicLong commitCount = new AtomicLong();
+    // partitions with a held back ack, per consumer thread
+    private static final ThreadLocal<Set<KafkaLagSampler.PartitionLag>> deferred = ThreadLocal.withInitial(HashSet::new);
+
+    private ApplicationEventPublisher publisher;
+    private long lagThreshold;
+    private long exitLag;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        publisher = applicationContext;
+        Environment env = applicationContext.getEnvironment();
+        lagThreshold = env.getProperty(PREFIX + "lag-threshold", Long.class, 0L);
+        exitLag = env.getProperty(PREFIX + "exit-lag", Long.class, lagThreshold / 10);
+        logEvery = Math.max(env.getProperty(PREFIX + "log-every", Integer.class, logEvery), 1);
+        ackEvery = Math.max(env.getProperty(PREFIX + "ack-every", Integer.class, ackEvery), 1);
+    }
+
+    public static boolean isActive() {
+        return active;
+    }
+
+    static void setActive4Test(boolean value) {
+        active = value;
+        commitCount.set(0);
+        deferred.remove();
+    }
+
+    // called by KafkaLagSampler after each sample with the largest partition lag
+    void update(long maxLag) {
+        if (lagThreshold <= 0) return;
+        boolean next = active ? maxLag > exitLag : maxLag >= lagThreshold;
+        if (next == active) return;
+        active = next;
+        commitCount.set(0);
+        if (next) {
+            log.warn("Kafka catch-up mode on, lag {} records, logging every {} and acking every {} records", maxLag, logEvery, ackEvery);
+        } else {
+            log.info("Kafka catch-up mode off, lag {} records", maxLag);
+        }
+        publisher.publishEvent(new KafkaCatchUpEvent(this, next, maxLag));
+    }
+
+    static boolean shouldLog() {
+        return commitCount.incrementAndGet() % logEvery == 0;
+    }
+
+    static boolean shouldAck(KafkaLagSampler.PartitionLag partition) {
+        return partition == null || partition.unackedCount++ % ackEvery == ackEvery - 1;
+    }
+
+    static void defer(KafkaLagSampler.PartitionLag partition, Acknowledgment acknowledgment) {
+        partition.deferredAck = acknowledgment;
+        partition.deferredOffset = partition.getCommittedOffset();
+        partition.flushDue = false;
+        deferred.get().add(partition);
+    }
+
+    static void acked(KafkaLagSampler.PartitionLag partition) {
+        if (partition == null) return;
+        partition.ackedOffset = partition.getCommittedOffset();
+        partition.deferredAck = null;
+        deferred.get().remove(partition);
+    }
+
+    // on the consumer thread, acks what this thread held back once catch-up is off or the partition went idle
+    static void flushDeferred() {
+        Set<KafkaLagSampler.PartitionLag> held = deferred.get();
+        if (held.isEmpty()) return;
+        boolean all = !active;
+        for (Iterator<KafkaLagSampler.PartitionLag> it = held.iterator(); it.hasNext(); ) {
+            KafkaLagSampler.PartitionLag partition = it.next();
+            if (!all && !partition.flushDue) continue;
+            it.remove();
+            Acknowledgment acknowledgment = partition.deferredAck;
+            partition.deferredAck = null;
+            partition.flushDue = false;
+            // after a rebalance another consumer may have committed past it
+            if (acknowledgment != null && partition.ackedOffset < partition.deferredOffset) {
+                acknowledgment.acknowledge();
+                partition.ackedOffset = partition.deferredOffset;
+            }
+        }
+    }
+
+    // published on the consumer thread of the idle container
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        flushDeferred();
+    }
+}
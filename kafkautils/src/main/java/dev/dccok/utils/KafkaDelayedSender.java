@@ -0,0 +1,292 @@
+package dev.dccok.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Backs KafkaUtil.sendAfter.  Delays up to kafkautil.delay.wheel-max-ms (default 60s) are held in a
+ * HashedWheelTimer and persisted as one file per message in kafkautil.delay.store-dir so they are resent
+ * after a restart.  The store dir has to be on a volume that survives the pod, the tmpdir fallback
+ * (java.io.tmpdir/kafkautil-delayed/info.app.name) does not.
+ * Longer delays are parked on the delay topic when kafkautil.delay.binding names an output binding for it;
+ * kafkaDelayChannel consumes that topic and nacks (pauses, no sleeping thread) until the message is close
+ * enough to move onto the wheel.  Without a delay binding everything goes to the wheel.
+ * A nack pauses the whole consumer, so a long delay at the head holds back shorter ones behind it.  Delay
+ * buckets bound that wait to the bucket width, each bucket is a topic with its own output binding and its own
+ * consumer binding (declare a bean returning delayConsumer() per extra bucket):
+ *   kafkautil.delay.buckets = 600000:kafkaDelay10m-out-0, 3600000:kafkaDelay1h-out-0
+ * A delay goes to the first bucket whose max delay (ms) covers it, anything longer to kafkautil.delay.binding.
+ * With buckets no wider than wheel-max-ms no message is held past its due time.
+ */
+@Slf4j
+@Configuration
+public class KafkaDelayedSender implements ApplicationContextAware {
+
+    public static final String DELIVER_AT = "deliverat";
+    public static final String TARGET_BINDING = "targetbinding";
+    private static final String DELAY_BINDING_KEY = "kafkautil.delay.binding";
+    private static final String BUCKETS_KEY = "kafkautil.delay.buckets";
+    private static final String WHEEL_MAX_KEY = "kafkautil.delay.wheel-max-ms";
+    private static final String STORE_DIR_KEY = "kafkautil.delay.store-dir";
+    private static final String APP_NAME_KEY = "info.app.name";
+    private static final long MAX_NACK_MS = 300000L;
+    private static final long RETRY_MS = 5000L;
+    private static final String JSON = ".json";
+
+    @Autowired
+    private ObjectProvider<KafkaUtil> kafkaUtil;
+
+    private final ObjectMapper storeMapper = new ObjectMapper();
+    private String delayBinding;
+    // max delay ms -> output binding of the bucket topic
+    private final NavigableMap<Long, String> buckets = new TreeMap<>();
+    private long wheelMaxMs = 60000L;
+    private Path storeDir;
+    private boolean durableStore;
+    // files on the wheel of this JVM, not restored a second time
+    private final Set<Path> scheduledFiles = ConcurrentHashMap.newKeySet();
+    private HashedWheelTimer timer;
+    private ExecutorService sender;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class DelayedMessage {
+        String bindingName;
+        long deliverAt;
+        Map<String, String> headers;
+        byte[] payload;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        delayBinding = applicationContext.getEnvironment().getProperty(DELAY_BINDING_KEY);
+        String bucketConfig = applicationContext.getEnvironment().getProperty(BUCKETS_KEY);
+        if (StringUtils.hasText(bucketConfig)) {
+            for (String bucket : StringUtils.commaDelimitedListToStringArray(bucketConfig)) {
+                String[] parts = bucket.trim().split(":", 2);
+                if (parts.length != 2 || !StringUtils.hasText(parts[1])) {
+                    throw new IllegalArgumentException("Invalid " + BUCKETS_KEY + " entry '" + bucket + "', expected maxDelayMs:binding");
+                }
+                buckets.put(Long.parseLong(parts[0].trim()), parts[1].trim());
+            }
+        }
+        String wheelMax = applicationContext.getEnvironment().getProperty(WHEEL_MAX_KEY);
+        if (StringUtils.hasText(wheelMax)) {
+            wheelMaxMs = Long.parseLong(wheelMax);
+        }
+        String dir = applicationContext.getEnvironment().getProperty(STORE_DIR_KEY);
+        durableStore = StringUtils.hasText(dir);
+        if (durableStore) {
+            storeDir = Paths.get(dir);
+        } else {
+            // KafkaUtil's app name is not read yet at this point
+            String appName = applicationContext.getEnvironment().getProperty(APP_NAME_KEY);
+            storeDir = Paths.get(System.getProperty("java.io.tmpdir"), "kafkautil-delayed",
+                    StringUtils.hasText(appName) ? appName : "unknown");
+        }
+    }
+
+    private synchronized HashedWheelTimer getTimer() {
+        if (timer == null) {
+            if (!durableStore) {
+                log.warn("{} not set, delayed messages are stored in {} and lost if the pod is replaced", STORE_DIR_KEY, storeDir);
+            }
+            sender = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "kafka-delayed-send");
+                t.setDaemon(true);
+                return t;
+            });
+            timer = new HashedWheelTimer("kafka-delay-wheel", 100, 1024, sender);
+        }
+        return timer;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        // pending messages stay in the store and are resent by the next instance start
+        if (timer != null) {
+            timer.close();
+            sender.shutdown();
+        }
+    }
+
+    public boolean sendAfter(String bindingName, Message data, Duration delay) {
+        long deliverAt = System.currentTimeMillis() + delay.toMillis();
+        String parkBinding = delay.toMillis() > wheelMaxMs ? parkBinding(delay.toMillis()) : null;
+        if (parkBinding != null) {
+            Message parked = MessageBuilder.fromMessage(data)
+                    .setHeader(DELIVER_AT, deliverAt)
+                    .setHeader(TARGET_BINDING, bindingName).build();
+            return kafkaUtil.getObject().send(parkBinding, parked);
+        }
+        return schedule(new DelayedMessage(bindingName, deliverAt, copyHeaders(data.getHeaders()), toBytes(data.getPayload())));
+    }
+
+    // the smallest bucket covering the delay, else the catch-all delay binding
+    private String parkBinding(long delayMs) {
+        Map.Entry<Long, String> bucket = buckets.ceilingEntry(delayMs);
+        if (bucket != null) return bucket.getValue();
+        return StringUtils.hasText(delayBinding) ? delayBinding : null;
+    }
+
+    @Bean
+    public Consumer<Message<?>> kafkaDelayChannel() {
+        return delayConsumer();
+    }
+
+    // consumer for a delay topic, one bean (and consumer binding) per bucket topic
+    public Consumer<Message<?>> delayConsumer() {
+        return msg -> {
+            Acknowledgment acknowledgment = msg.getHeaders().get(KafkaHeaders.ACKNOWLEDGMENT, Acknowledgment.class);
+            String target = KafkaUtil.getHeaderValue(msg, TARGET_BINDING);
+            String deliverAtStr = KafkaUtil.getHeaderValue(msg, DELIVER_AT);
+            if (target == null || deliverAtStr == null) {
+                log.error("Dropping delayed message without {} or {}: {}", TARGET_BINDING, DELIVER_AT, KafkaUtil.getStandardHeaders(msg));
+            } else {
+                long deliverAt = Long.parseLong(deliverAtStr);
+                long remaining = deliverAt - System.currentTimeMillis();
+                if (remaining > wheelMaxMs && acknowledgment != null) {
+                    acknowledgment.nack(Duration.ofMillis(Math.min(remaining - wheelMaxMs, MAX_NACK_MS)));
+                    return;
+                }
+                Map<String, String> headers = copyHeaders(msg.getHeaders());
+                headers.remove(TARGET_BINDING);
+                headers.remove(DELIVER_AT);
+                if (!schedule(new DelayedMessage(target, deliverAt, headers, toBytes(msg.getPayload())))) {
+                    throw new IllegalStateException("Unable to persist delayed message for " + target);
+                }
+            }
+            if (acknowledgment != null) {
+                acknowledgment.acknowledge();
+            }
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void restorePending() {
+        if (!Files.isDirectory(storeDir)) return;
+        int count = 0;
+        try (Stream<Path> files = Files.list(storeDir)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(JSON)).toList()) {
+                if (scheduledFiles.contains(file)) continue;
+                try {
+                    DelayedMessage delayed = storeMapper.readValue(file.toFile(), DelayedMessage.class);
+                    scheduleOnWheel(delayed, file);
+                    count++;
+                } catch (IOException e) {
+                    log.error("Unable to restore delayed message {}", file, e);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Unable to list delayed message store {}", storeDir, e);
+        }
+        if (count > 0) {
+            log.info("Restored {} delayed Kafka messages from {}", count, storeDir);
+        }
+    }
+
+    public int getPendingCount() {
+        return timer != null ? timer.pendingCount() : 0;
+    }
+
+    boolean schedule(DelayedMessage delayed) {
+        Path file = storeDir.resolve(UUID.randomUUID() + JSON);
+        try {
+            Files.createDirectories(storeDir);
+            Path tmp = storeDir.resolve(file.getFileName() + ".tmp");
+            storeMapper.writeValue(tmp.toFile(), delayed);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Unable to persist delayed message for {}", delayed.getBindingName(), e);
+            return false;
+        }
+        scheduleOnWheel(delayed, file);
+        return true;
+    }
+
+    private void scheduleOnWheel(DelayedMessage delayed, Path file) {
+        scheduledFiles.add(file);
+        getTimer().schedule(() -> deliver(delayed, file),
+                delayed.getDeliverAt() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void deliver(DelayedMessage delayed, Path file) {
+        MessageBuilder<byte[]> builder = MessageBuilder.withPayload(delayed.getPayload())
+                .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON_VALUE);
+        if (delayed.getHeaders() != null) {
+            delayed.getHeaders().forEach(builder::setHeader);
+        }
+        if (kafkaUtil.getObject().send(delayed.getBindingName(), builder.build())) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Unable to remove delivered delayed message {}", file);
+            }
+            scheduledFiles.remove(file);
+        } else {
+            log.error("Failed to send delayed Kafka msg to {}, retrying in {}ms", delayed.getBindingName(), RETRY_MS);
+            getTimer().schedule(() -> deliver(delayed, file), RETRY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static Map<String, String> copyHeaders(MessageHeaders headers) {
+        Map<String, String> copy = new HashMap<>();
+        headers.forEach((key, value) -> {
+            if (key.startsWith("kafka_") || MessageHeaders.ID.equals(key) || MessageHeaders.TIMESTAMP.equals(key)
+                    || "deliveryAttempt".equals(key)) {
+                return;
+            }
+            if (value instanceof byte[] bytes) {
+                copy.put(key, new String(bytes));
+            } else if (value instanceof CharSequence || value instanceof Number || value instanceof Boolean) {
+                copy.put(key, value.toString());
+            } else if (MessageHeaders.CONTENT_TYPE.equals(key)) {
+                copy.put(key, value.toString());
+            }
+        });
+        return copy;
+    }
+
+    private static byte[] toBytes(Object payload) {
+        if (payload instanceof byte[] bytes) return bytes;
+        if (payload instanceof String string) return string.getBytes();
+        return KafkaUtil.toJsonBytes(payload);
+    }
+}
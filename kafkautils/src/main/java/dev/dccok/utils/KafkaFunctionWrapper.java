@@ -0,0 +1,54 @@
+package dev.dccok.utils;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.function.context.catalog.FunctionAroundWrapper;
+import org.springframework.cloud.function.context.catalog.SimpleFunctionRegistry.FunctionInvocationWrapper;
+import org.springframework.cloud.function.observability.ObservationFunctionAroundWrapper;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs around every invocation of a binding function with a consumed record, retries of the binder's
+ * RetryTemplate included: each delivery starts with no pending sendAtCommit messages and a fresh processing
+ * start, and a delivery that throws leaves nothing behind for the next one.  Expired records (see
+ * KafkaUtil.skipIfExpired) are acknowledged, counted and dropped before the function runs.
+ * Spring Cloud Function takes a single FunctionAroundWrapper, this one replaces the observation wrapper and
+ * delegates to it when an ObservationRegistry is available.  Disabled, like that wrapper, by
+ * -Dspring.cloud.function.observability.enabled=false.
+ */
+@Component
+public class KafkaFunctionWrapper extends FunctionAroundWrapper {
+
+    private final FunctionAroundWrapper observation;
+
+    public KafkaFunctionWrapper(ObjectProvider<ObservationRegistry> observationRegistry) {
+        ObservationRegistry registry = observationRegistry.getIfAvailable();
+        observation = registry != null ? new ObservationFunctionAroundWrapper(registry, null) : null;
+    }
+
+    @Override
+    protected Object doApply(Object input, FunctionInvocationWrapper targetFunction) {
+        // outbound messages of StreamBridge pass here too
+        if (!(input instanceof Message<?> msg) || !msg.getHeaders().containsKey(KafkaHeaders.RECEIVED_TOPIC)) {
+            return invoke(input, targetFunction);
+        }
+        if (KafkaUtil.skipIfExpired(msg)) {
+            return null;
+        }
+        KafkaUtil.beginDelivery();
+        boolean failed = true;
+        try {
+            Object result = invoke(input, targetFunction);
+            failed = false;
+            return result;
+        } finally {
+            KafkaUtil.endDelivery(failed);
+        }
+    }
+
+    private Object invoke(Object input, FunctionInvocationWrapper targetFunction) {
+        return observation != null ? observation.apply(input, targetFunction) : targetFunction.apply(input);
+    }
+}
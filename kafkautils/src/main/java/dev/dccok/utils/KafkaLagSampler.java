@@ -0,0 +1,268 @@
+package dev.dccok.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per partition consumer lag computed from the records KafkaUtil commits.  Every kafkautil.lag.sample-interval-ms
+ * the end offsets of the partitions seen are fetched and these gauges published (tags topic, group, partition):
+ *   kafkautil.consumer.lag            end offset - committed offset
+ *   kafkautil.consumer.lag.time       ms since the last committed record was produced, 0 when caught up
+ *   kafkautil.consumer.catchup        estimated seconds to catch up at the current consume/produce rates, -1 when not catching up
+ * Sampling is off unless the interval is set.  A partition without a committed record for
+ * kafkautil.lag.evict-after-samples (default 10) samples is dropped with its gauges, it was revoked or is idle,
+ * and comes back with its next record.  The Admin client takes the spring.kafka.* and
+ * spring.cloud.stream.kafka.binder.configuration.* client settings of the bindings.
+ */
+@Slf4j
+@Component
+public class KafkaLagSampler implements ApplicationContextAware {
+
+    private static final String INTERVAL_KEY = "kafkautil.lag.sample-interval-ms";
+    private static final String EVICT_KEY = "kafkautil.lag.evict-after-samples";
+    static final String[] BROKER_KEYS = {"kafkautil.lag.bootstrap-servers",
+            "spring.cloud.stream.kafka.binder.brokers", "spring.kafka.bootstrap-servers"};
+    private static final String BINDER_CONFIG_KEY = "spring.cloud.stream.kafka.binder.configuration";
+
+    private static final Map<String, PartitionLag> partitions = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Autowired(required = false)
+    private KafkaCatchUpMode catchUpMode;
+
+    private long intervalMs;
+    private int evictAfterSamples = 10;
+    private String brokers;
+    private Map<String, Object> adminConfig;
+    private Admin admin;
+    private ScheduledExecutorService sampler;
+
+    @Getter
+    public static class PartitionLag {
+        private final String topic;
+        private final String group;
+        private final int partition;
+        private volatile long committedOffset = -1;
+        private volatile long producedTimestamp;
+        private volatile long consumedCount;
+        private volatile long endOffset = -1;
+        private volatile long lag;
+        private volatile long timeLagMs;
+        private volatile double catchUpSeconds = -1;
+        int unackedCount;
+        // last ack held back in catch-up mode and its offset, only acknowledged on the consumer thread (see KafkaCatchUpMode)
+        volatile Acknowledgment deferredAck;
+        long deferredOffset = -1;
+        volatile long ackedOffset = -1;
+        // set by the sampler when the partition had no commit for a sample interval
+        volatile boolean flushDue;
+        private long lastSampleMs;
+        private long lastSampleConsumed;
+        private long lastSampleEnd = -1;
+        private int idleSamples;
+        private final List<Meter> meters = new ArrayList<>();
+
+        PartitionLag(String topic, String group, int partition) {
+            this.topic = topic;
+            this.group = group;
+            this.partition = partition;
+        }
+    }
+
+    // called by KafkaUtil.commit on the consumer thread, cheap enough for every record
+    static PartitionLag record(Message msg) {
+        MessageHeaders headers = msg.getHeaders();
+        String topic = (String) headers.get(KafkaHeaders.RECEIVED_TOPIC);
+        Integer part = (Integer) headers.get(KafkaHeaders.RECEIVED_PARTITION);
+        Long off = (Long) headers.get(KafkaHeaders.OFFSET);
+        if (topic == null || part == null || off == null) return null;
+        String group = (String) headers.get(KafkaHeaders.GROUP_ID);
+        PartitionLag lag = partitions.computeIfAbsent(String.format(KafkaUtil.TWO_STRS, topic, group) + "/" + part,
+                k -> new PartitionLag(topic, group, part));
+        lag.committedOffset = off + 1;
+        Long tmstp = (Long) headers.get(KafkaHeaders.RECEIVED_TIMESTAMP);
+        if (tmstp != null) {
+            lag.producedTimestamp = tmstp;
+        }
+        lag.consumedCount++;
+        return lag;
+    }
+
+    public static Collection<PartitionLag> getPartitionLags() {
+        return partitions.values();
+    }
+
+    // total records behind on the partitions of a topic, -1 until sampled
+    public static long getTopicLag(String topic) {
+        long total = -1;
+        for (PartitionLag lag : partitions.values()) {
+            if (lag.getTopic().equals(topic) && lag.getEndOffset() >= 0) {
+                total = Math.max(total, 0) + lag.getLag();
+            }
+        }
+        return total;
+    }
+
+    static void clearPartitions4Test() {
+        partitions.clear();
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        Environment env = applicationContext.getEnvironment();
+        String interval = env.getProperty(INTERVAL_KEY);
+        intervalMs = StringUtils.hasText(interval) ? Long.parseLong(interval) : 0;
+        evictAfterSamples = env.getProperty(EVICT_KEY, Integer.class, evictAfterSamples);
+        for (String key : BROKER_KEYS) {
+            brokers = env.getProperty(key);
+            if (StringUtils.hasText(brokers)) break;
+        }
+        adminConfig = adminConfig(env);
+    }
+
+    // the client settings the bindings use (security protocol, sasl, ssl...): spring.kafka.* overlaid by the
+    // binder's configuration map, as the Kafka binder merges them
+    static Map<String, Object> adminConfig(Environment env) {
+        Binder binder = Binder.get(env);
+        Map<String, Object> config = new HashMap<>(binder.bind("spring.kafka", KafkaProperties.class)
+                .orElseGet(KafkaProperties::new).buildAdminProperties());
+        config.putAll(binder.bind(BINDER_CONFIG_KEY, Bindable.mapOf(String.class, String.class)).orElse(Map.of()));
+        return config;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startSampling() {
+        if (intervalMs <= 0) return;
+        if (!StringUtils.hasText(brokers)) {
+            log.error("{} set but no brokers found in {}, lag sampling disabled", INTERVAL_KEY, String.join(", ", BROKER_KEYS));
+            return;
+        }
+        Map<String, Object> config = new HashMap<>(adminConfig);
+        config.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, brokers);
+        config.put(AdminClientConfig.CLIENT_ID_CONFIG, KafkaUtil.getAppName() + "-lag-sampler");
+        admin = Admin.create(config);
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "kafka-lag-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        sampler.scheduleWithFixedDelay(this::sampleEndOffsets, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("Kafka lag sampling every {}ms", intervalMs);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            admin.close();
+        }
+    }
+
+    private void sampleEndOffsets() {
+        try {
+            Map<TopicPartition, OffsetSpec> request = new HashMap<>();
+            partitions.values().forEach(p -> request.put(new TopicPartition(p.getTopic(), p.getPartition()), OffsetSpec.latest()));
+            if (request.isEmpty()) return;
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> result =
+                    admin.listOffsets(request).all().get(intervalMs, TimeUnit.MILLISECONDS);
+            Map<TopicPartition, Long> endOffsets = new HashMap<>();
+            result.forEach((tp, info) -> endOffsets.put(tp, info.offset()));
+            sample(endOffsets, System.currentTimeMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Kafka lag sampling failed: {}", e.getMessage());
+        }
+    }
+
+    void sample(Map<TopicPartition, Long> endOffsets, long now) {
+        MeterRegistry registry = meterRegistry != null ? meterRegistry.getIfAvailable() : null;
+        long maxLag = 0;
+        for (Map.Entry<String, PartitionLag> entry : partitions.entrySet()) {
+            PartitionLag p = entry.getValue();
+            long consumed = p.consumedCount;
+            p.idleSamples = consumed == p.lastSampleConsumed && p.lastSampleEnd >= 0 ? p.idleSamples + 1 : 0;
+            if (p.idleSamples > 0 && p.deferredAck != null) {
+                // nothing committed since the last sample, the consumer thread acks the deferred one
+                p.flushDue = true;
+            }
+            if (p.idleSamples >= evictAfterSamples) {
+                // the next committed record of the partition recreates the entry
+                partitions.remove(entry.getKey(), p);
+                if (registry != null) {
+                    p.meters.forEach(registry::remove);
+                }
+                continue;
+            }
+            Long end = endOffsets.get(new TopicPartition(p.getTopic(), p.getPartition()));
+            if (end == null) continue;
+            p.endOffset = end;
+            p.lag = Math.max(end - p.committedOffset, 0);
+            maxLag = Math.max(maxLag, p.lag);
+            p.timeLagMs = p.lag == 0 ? 0 : Math.max(now - p.producedTimestamp, 0);
+            if (p.lastSampleEnd >= 0 && now > p.lastSampleMs) {
+                double seconds = (now - p.lastSampleMs) / 1000.0;
+                double netRate = ((consumed - p.lastSampleConsumed) - (end - p.lastSampleEnd)) / seconds;
+                p.catchUpSeconds = p.lag == 0 ? 0 : netRate > 0 ? p.lag / netRate : -1;
+            }
+            p.lastSampleMs = now;
+            p.lastSampleConsumed = consumed;
+            p.lastSampleEnd = end;
+            if (registry != null && p.meters.isEmpty()) {
+                register(registry, p);
+            }
+        }
+        if (catchUpMode != null) {
+            catchUpMode.update(maxLag);
+        }
+    }
+
+    private static void register(MeterRegistry registry, PartitionLag p) {
+        Tags tags = Tags.of("topic", p.getTopic(), "group", String.valueOf(p.getGroup()),
+                "partition", String.valueOf(p.getPartition()));
+        p.meters.add(Gauge.builder("kafkautil.consumer.lag", p, PartitionLag::getLag).tags(tags).register(registry));
+        p.meters.add(Gauge.builder("kafkautil.consumer.lag.time", p, PartitionLag::getTimeLagMs).tags(tags)
+                .baseUnit("milliseconds").register(registry));
+        p.meters.add(Gauge.builder("kafkautil.consumer.catchup", p, PartitionLag::getCatchUpSeconds).tags(tags)
+                .baseUnit("seconds").register(registry));
+    }
+}
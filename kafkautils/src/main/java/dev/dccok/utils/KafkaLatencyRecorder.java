@@ -0,0 +1,109 @@
+package dev.dccok.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer to consumer latency.  KafkaUtil.send stamps the produce time (epoch micros), the producing app and the
+ * start of the pipeline, which is copied from the record being handled so it survives every hop.  When the handler
+ * reads the payload these histograms (tags topic, origin) are recorded:
+ *   kafkautil.consumer.latency    produce to pickup of this hop
+ *   kafkautil.pipeline.latency    first produce of the pipeline to pickup of this hop, only past the first hop
+ */
+@Slf4j
+@Component
+public class KafkaLatencyRecorder implements ApplicationContextAware {
+
+    public static final String PRODUCED_AT = "producedat";
+    public static final String ORIGIN_APP = "originapp";
+    public static final String PIPELINE_START = "pipelinestart";
+
+    private static volatile MeterRegistry registry;
+    private static final Map<String, Timer> hopTimers = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> pipelineTimers = new ConcurrentHashMap<>();
+    // pipeline start of the record the thread is handling, carried into what it sends
+    private static final ThreadLocal<Long> pipelineStart = new ThreadLocal<>();
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        setRegistry(applicationContext.getBeanProvider(MeterRegistry.class).getIfAvailable());
+    }
+
+    static void setRegistry(MeterRegistry meterRegistry) {
+        registry = meterRegistry;
+        hopTimers.clear();
+        pipelineTimers.clear();
+    }
+
+    static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1000;
+    }
+
+    static void stamp(MessageBuilder<?> builder, Message data) {
+        long now = nowMicros();
+        Long start = pipelineStart.get();
+        if (start == null) {
+            start = parseMicros(data, PIPELINE_START);
+        }
+        builder.setHeader(PRODUCED_AT, now)
+                .setHeader(ORIGIN_APP, KafkaUtil.getAppName())
+                .setHeader(PIPELINE_START, start != null ? start : now);
+    }
+
+    // called when the handler starts on a record
+    static void record(Message msg) {
+        Long producedAt = parseMicros(msg, PRODUCED_AT);
+        if (producedAt == null) {
+            pipelineStart.remove();
+            return;
+        }
+        Long start = parseMicros(msg, PIPELINE_START);
+        pipelineStart.set(start != null ? start : producedAt);
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry == null) return;
+        long now = nowMicros();
+        String topic = String.valueOf(msg.getHeaders().get(KafkaHeaders.RECEIVED_TOPIC));
+        String origin = String.valueOf(KafkaUtil.getHeaderValue(msg, ORIGIN_APP));
+        String key = String.format(KafkaUtil.TWO_STRS, topic, origin);
+        hopTimers.computeIfAbsent(key, k -> timer(meterRegistry, "kafkautil.consumer.latency", topic, origin))
+                .record(Math.max(now - producedAt, 0), TimeUnit.MICROSECONDS);
+        if (start != null && start < producedAt) {
+            pipelineTimers.computeIfAbsent(key, k -> timer(meterRegistry, "kafkautil.pipeline.latency", topic, origin))
+                    .record(Math.max(now - start, 0), TimeUnit.MICROSECONDS);
+        }
+    }
+
+    static void clear() {
+        pipelineStart.remove();
+    }
+
+    private static Long parseMicros(Message msg, String key) {
+        String value = KafkaUtil.getHeaderValue(msg, key);
+        if (value == null) return null;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring invalid {} header {}", key, value);
+            return null;
+        }
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String name, String topic, String origin) {
+        return Timer.builder(name).tags("topic", topic, "origin", origin)
+                .publishPercentileHistogram().register(meterRegistry);
+    }
+}
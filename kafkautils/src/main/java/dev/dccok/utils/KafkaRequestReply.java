@@ -0,0 +1,144 @@
+package dev.dccok.utils;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Request-reply on top of KafkaUtil.send.  Requests carry correlationid and replyto headers, the responder
+ * answers with reply(request, payload) and the reply is routed back through the kafkaReplyChannel binding.
+ *
+ * The reply binding must be consumed without a group (anonymous) so that every instance sees every reply,
+ * replies for requests made by other instances are ignored.
+ *   spring.cloud.stream.bindings.kafkaReplyChannel-in-0.destination = &lt;reply topic&gt;
+ */
+@Slf4j
+@Configuration
+public class KafkaRequestReply implements ApplicationContextAware {
+
+    public static final String CORRELATION_ID = "correlationid";
+    public static final String REPLY_TO = "replyto";
+    private static final String DESTINATION_KEY = "spring.cloud.stream.bindings.kafkaReplyChannel-in-0.destination";
+
+    @Autowired
+    private KafkaUtil kafkaUtil;
+
+    private String replyTopic;
+    private final Map<String, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+    private HashedWheelTimer timer;
+
+    @AllArgsConstructor
+    private static class PendingRequest {
+        final CompletableFuture<Message<?>> result;
+        volatile HashedWheelTimer.Timeout timeout;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        replyTopic = applicationContext.getEnvironment().getProperty(DESTINATION_KEY);
+        if (!StringUtils.hasText(replyTopic)) {
+            log.warn("{} not defined, request-reply disabled", DESTINATION_KEY);
+        } else {
+            timer = new HashedWheelTimer("kafka-reply-timeout", 10, 512);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (timer != null) {
+            timer.close();
+        }
+        pendingRequests.values().forEach(p -> p.result.completeExceptionally(new IllegalStateException("Shutting down")));
+        pendingRequests.clear();
+    }
+
+    public CompletableFuture<Message<?>> request(String bindingName, Message data, Duration timeout) {
+        if (!StringUtils.hasText(replyTopic)) {
+            return CompletableFuture.failedFuture(new IllegalStateException(DESTINATION_KEY + " not defined"));
+        }
+        String correlationId = UUID.randomUUID().toString();
+        CompletableFuture<Message<?>> result = new CompletableFuture<>();
+        PendingRequest pending = new PendingRequest(result, null);
+        pendingRequests.put(correlationId, pending);
+        pending.timeout = timer.schedule(() -> {
+            PendingRequest expired = pendingRequests.remove(correlationId);
+            if (expired != null) {
+                expired.result.completeExceptionally(new TimeoutException(
+                        String.format("No reply for %s within %dms", correlationId, timeout.toMillis())));
+            }
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        Message request = MessageBuilder.fromMessage(data)
+                .setHeader(CORRELATION_ID, correlationId)
+                .setHeader(REPLY_TO, replyTopic).build();
+        if (!kafkaUtil.send(bindingName, request)) {
+            pending.timeout.cancel();
+            pendingRequests.remove(correlationId);
+            result.completeExceptionally(new IllegalStateException("Failed to send request to " + bindingName));
+        }
+        return result;
+    }
+
+    public <T> CompletableFuture<T> request(String bindingName, Message data, Class<T> claz, Duration timeout) {
+        return request(bindingName, data, timeout).thenApply(reply -> KafkaUtil.convertPayload(reply, claz));
+    }
+
+    public <T> Mono<T> requestMono(String bindingName, Message data, Class<T> claz, Duration timeout) {
+        return Mono.fromFuture(() -> request(bindingName, data, claz, timeout));
+    }
+
+    // called by the responder with the consumed request
+    public boolean reply(Message<?> request, Object payload) {
+        String replyTo = KafkaUtil.getHeaderValue(request, REPLY_TO);
+        String correlationId = KafkaUtil.getHeaderValue(request, CORRELATION_ID);
+        if (replyTo == null || correlationId == null) {
+            log.error("Cannot reply, request has no {} or {} header", REPLY_TO, CORRELATION_ID);
+            return false;
+        }
+        Message<?> reply = MessageBuilder.withPayload(payload)
+                .setHeader(CORRELATION_ID, correlationId)
+                .setHeader("producerid", KafkaUtil.getAppName()).build();
+        return kafkaUtil.getStreamBridge().send(replyTo, reply);
+    }
+
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    @Bean
+    public Consumer<Message<?>> kafkaReplyChannel() {
+        return this::completeRequest;
+    }
+
+    void completeRequest(Message<?> reply) {
+        String correlationId = KafkaUtil.getHeaderValue(reply, CORRELATION_ID);
+        PendingRequest pending = correlationId != null ? pendingRequests.remove(correlationId) : null;
+        if (pending == null) {
+            log.debug("Ignoring reply {}, not requested by this instance or already timed out", correlationId);
+            return;
+        }
+        if (pending.timeout != null) {
+            pending.timeout.cancel();
+        }
+        pending.result.complete(reply);
+    }
+}
@@ -3,6 +3,8 @@ package dev.dccok.utils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -24,8 +26,13 @@ import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Component
@@ -34,10 +41,18 @@ public class KafkaUtil implements ApplicationContextAware {
 
     public static final String TWO_STRS = "%s/%s";
     public static final String TWO_DIGS = "%d/%d";
+    public static final String EXPIRES_AT = "expiresat";
+    public static final String TTL_KEY_FMT = "kafkautil.bindings.%s.ttl-ms";
+    public static final String TRANSACTIONAL_KEY = "kafkautil.transactional";
+    private static final String PRODUCER_ID = "producerid";
+    private static final String TX_PREFIX_KEY = "spring.cloud.stream.kafka.binder.transaction.transaction-id-prefix";
 
     @Autowired
     private StreamBridge streamBridge;
 
+    @Autowired
+    private KafkaDelayedSender delayedSender;
+
     private static KafkaUtil INSTANCE;
 
     @AllArgsConstructor
@@ -53,8 +68,12 @@ public class KafkaUtil implements ApplicationContextAware {
         if (!getPendingOutboundMessages().isEmpty()) {
             log.info("Posting {} pending outbound Kafka messages", getPendingOutboundMessages().size());
             for(OutboundMessage pendingMsg : getPendingOutboundMessages()) {
-                if (!send(pendingMsg.getBindingName(), pendingMsg.getData()))
+                if (!send(pendingMsg.getBindingName(), pendingMsg.getData())) {
+                    if (transactional) { // abort, the offset must not be committed without the message
+                        throw new IllegalStateException("Failed to send pending Kafka msg to " + pendingMsg.getBindingName());
+                    }
                     log.error("Failed to send pending Kafka msg to {}", pendingMsg.getBindingName());
+                }
             }
             getPendingOutboundMessages().clear();
         }
@@ -70,23 +89,84 @@ public class KafkaUtil implements ApplicationContextAware {
         Message dup;
         try {
             Class<?> claz = data.getPayload().getClass();
-            String payload = mapper.writeValueAsString(data.getPayload());
-            Object obj = mapper.readValue(payload, claz);
+            byte[] payload = writerFor(claz).writeValueAsBytes(data.getPayload());
+            Object obj = readerFor(claz).readValue(payload);
             dup = MessageBuilder.createMessage(obj, data.getHeaders());
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("Failed to copy payload", e);
             throw new RuntimeException(e);
         }
         getPendingOutboundMessages().add(new OutboundMessage(bindingName, dup));
     }
 
+    public void sendAtCommit(String bindingName, Message data, Duration ttl) {
+        sendAtCommit(bindingName, withExpiry(data, ttl));
+    }
+
     public boolean send(String bindingName, Message data) {
-        String[] channel = bindingName.split("-");
-        data = MessageBuilder.fromMessage(data).setHeader("producerid", channel[0]).build();
-        msgTopics.add(channelTopicMap.get(bindingName));
+        Map<String, Object> headers = getBindingHeaders(bindingName);
+        MessageBuilder<?> builder = MessageBuilder.fromMessage(data).copyHeadersIfAbsent(headers)
+                .setHeader(PRODUCER_ID, headers.get(PRODUCER_ID));
+        KafkaLatencyRecorder.stamp(builder, data);
+        data = builder.build();
+        msgTopics.add(channelTopicMap.getOrDefault(bindingName, bindingName));
         return streamBridge.send(bindingName, data);
     }
 
+    // consumers drop the message (see skipIfExpired) once ttl has elapsed
+    public boolean send(String bindingName, Message data, Duration ttl) {
+        return send(bindingName, withExpiry(data, ttl));
+    }
+
+    // payload encoded once, every binding gets the same bytes
+    public boolean multicast(Message data, String... bindingNames) {
+        Message encoded = encodeOnce(data);
+        boolean sent = true;
+        for (String bindingName : bindingNames) {
+            sent &= send(bindingName, encoded);
+        }
+        return sent;
+    }
+
+    // the encoded bytes are the copy sendAtCommit otherwise makes per call
+    public void multicastAtCommit(Message data, String... bindingNames) {
+        Message encoded = encodeOnce(data);
+        for (String bindingName : bindingNames) {
+            getPendingOutboundMessages().add(new OutboundMessage(bindingName, encoded));
+        }
+    }
+
+    // no content type is set here, send adds the one configured for each binding unless the message has one
+    private static Message encodeOnce(Message data) {
+        Object payload = data.getPayload();
+        if (payload instanceof byte[]) return data;
+        byte[] bytes = payload instanceof String string ? string.getBytes(StandardCharsets.UTF_8) : toJsonBytes(payload);
+        return MessageBuilder.withPayload(bytes).copyHeaders(data.getHeaders()).build();
+    }
+
+    // the headers every message of a binding gets (producerid, the binding's content-type), built on its first send
+    private static Map<String, Object> getBindingHeaders(String bindingName) {
+        return bindingHeaders.computeIfAbsent(bindingName, b -> {
+            Map<String, Object> headers = new HashMap<>();
+            headers.put(PRODUCER_ID, b.split("-")[0]);
+            String contentType = bindingContentTypes.get(b);
+            if (StringUtils.hasText(contentType)) {
+                headers.put(MessageHeaders.CONTENT_TYPE, contentType);
+            }
+            return Map.copyOf(headers);
+        });
+    }
+
+    // returns without waiting, the message is persisted locally or parked on the delay topic (see KafkaDelayedSender)
+    public boolean sendAfter(String bindingName, Message data, Duration delay) {
+        return delayedSender.sendAfter(bindingName, data, delay);
+    }
+
+    private static Message withExpiry(Message data, Duration ttl) {
+        return MessageBuilder.fromMessage(data)
+                .setHeader(EXPIRES_AT, System.currentTimeMillis() + ttl.toMillis()).build();
+    }
+
     public void logProducedMsgTopics(Logger logger) {
         if (!msgTopics.isEmpty()) {
             logger.info("Std msgs produced on {}", msgTopics);
@@ -95,15 +175,31 @@ public class KafkaUtil implements ApplicationContextAware {
 
     private static long maxProcessingTimeMs = 300000L;
     private static ObjectMapper mapper;
+    private static final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
     private final String OM = "objectMapper";
 
-    private static final Map<String,String> processedMsgs = new HashMap<>();
+    private static final Map<String,String> processedMsgs = new ConcurrentHashMap<>();
+    // binder transactions: pending messages and the consumed offset are committed in the container's transaction
+    private static boolean transactional;
 
     private static final Map<String, Long> processStartTimeMap = new HashMap<>();
     private static final Map<String, String> channelTopicMap = new HashMap<>();
-    private static final Set<String> msgTopics = new HashSet<>();
+    private static final Map<String, Map<String, Object>> bindingHeaders = new ConcurrentHashMap<>();
+    private static final Map<String, String> bindingContentTypes = new HashMap<>();
+    private static final Map<String, Long> topicTtlMap = new HashMap<>();
+    private static final Map<String, AtomicLong> expiredCounts = new ConcurrentHashMap<>();
+    // also sent to from non-consumer threads (diagnostics replies, delayed sends)
+    private static final Set<String> msgTopics = ConcurrentHashMap.newKeySet();
+    private static final Set<InFlight> inFlight = ConcurrentHashMap.newKeySet();
+    private static final ThreadLocal<InFlight> inFlightMark = new ThreadLocal<>();
+    private static final ThreadLocal<Message> startedRecord = new ThreadLocal<>();
     private static String appName= "unknown";
 
+    public static String getAppName() {
+        return appName;
+    }
+
     public static void clearProcessedMsgs4Test(KafkaUtil mock) {
         INSTANCE = mock;
         clearProcessedMsgs4Test();
@@ -112,6 +208,28 @@ public class KafkaUtil implements ApplicationContextAware {
         log.info("clearing processedMsgs");
         processedMsgs.clear();
         msgTopics.clear();
+        topicTtlMap.clear();
+        expiredCounts.clear();
+    }
+
+    static void setBindingContentType4Test(String bindingName, String contentType) {
+        bindingContentTypes.put(bindingName, contentType);
+        bindingHeaders.remove(bindingName);
+    }
+
+    // a binding may consume several topics, destination=a,b
+    static void putTopicTtl(String destination, long ttlMs) {
+        for (String topic : StringUtils.commaDelimitedListToStringArray(destination)) {
+            if (StringUtils.hasText(topic)) topicTtlMap.put(topic.trim(), ttlMs);
+        }
+    }
+
+    static boolean isReaderCached4Test(Class<?> claz) {
+        return readers.containsKey(claz);
+    }
+
+    static boolean isWriterCached4Test(Class<?> claz) {
+        return writers.containsKey(claz);
     }
 
     private static String getMessageKey(Message msg) {
@@ -121,9 +239,88 @@ public class KafkaUtil implements ApplicationContextAware {
         return String.format(TWO_STRS,topic, group);
     }
     private static void recordStartTime(Message msg) {
-        INSTANCE.clearPendingMessage();
-        msgTopics.clear();
+        startRecord(msg, true);
+    }
+
+    // once per record, handlers may read the payload more than once (fields first, then the object); the
+    // projections never clear the pending sends, they may run after sendAtCommit
+    private static void startRecord(Message msg, boolean clearPending) {
+        if (startedRecord.get() == msg) return;
+        startedRecord.set(msg);
+        if (clearPending) {
+            INSTANCE.clearPendingMessage();
+            msgTopics.clear();
+        }
         processStartTimeMap.put(getMessageKey(msg), System.currentTimeMillis());
+        markInFlight((String) msg.getHeaders().get(KafkaHeaders.RECEIVED_TOPIC));
+        KafkaLatencyRecorder.record(msg);
+    }
+
+    // KafkaFunctionWrapper, before each delivery of a record to the binding function: a retried delivery of the
+    // same Message instance starts over instead of keeping the failed attempt's sends and start time
+    static void beginDelivery() {
+        startedRecord.remove();
+        if (INSTANCE != null) {
+            INSTANCE.clearPendingMessage();
+        }
+        msgTopics.clear();
+    }
+
+    static void endDelivery(boolean failed) {
+        startedRecord.remove();
+        if (failed) {
+            if (INSTANCE != null) {
+                INSTANCE.clearPendingMessage();
+            }
+            endInFlight();
+            KafkaLatencyRecorder.clear();
+        }
+    }
+
+    // identity, not value equality: two threads may start on the same topic in the same ms
+    private static final class InFlight {
+        final String topic;
+        final long since;
+
+        InFlight(String topic, long since) {
+            this.topic = topic;
+            this.since = since;
+        }
+    }
+
+    // a record read but never committed is released when the thread starts on its next record, when it is
+    // skipped as a duplicate or expired, or at the latest after max.poll.interval.ms (handler exception, thread gone)
+    private static void markInFlight(String topic) {
+        endInFlight();
+        if (topic != null) {
+            InFlight mark = new InFlight(topic, System.currentTimeMillis());
+            inFlight.add(mark);
+            inFlightMark.set(mark);
+        }
+    }
+
+    private static void endInFlight() {
+        InFlight mark = inFlightMark.get();
+        if (mark != null) {
+            inFlight.remove(mark);
+            inFlightMark.remove();
+        }
+    }
+
+    public static int getInFlightCount(String topic) {
+        return getInFlightCount(topic, System.currentTimeMillis());
+    }
+
+    static int getInFlightCount(String topic, long now) {
+        int count = 0;
+        for (InFlight mark : inFlight) {
+            if (now - mark.since > maxProcessingTimeMs) {
+                inFlight.remove(mark);
+            } else if (mark.topic.equals(topic)) {
+                count++;
+            }
+        }
+        return count;
     }
 
     private static long checkForOvertime(Message msg, Logger logger) {
@@ -135,31 +332,111 @@ public class KafkaUtil implements ApplicationContextAware {
         return duration;
     }
 
+    // in transactional mode a redelivered record belongs to an aborted transaction, it has to be processed again
     public static boolean isDupMessage(Message msg) {
+        if (transactional) return false;
         MessageHeaders headers = msg.getHeaders();
-        String key = String.format(TWO_STRS,headers.get(KafkaHeaders.RECEIVED_TOPIC),headers.get(KafkaHeaders.GROUP_ID));
-        String val = String.format(TWO_DIGS,(Long) headers.get(KafkaHeaders.RECEIVED_PARTITION),(Long) headers.get(KafkaHeaders.OFFSET));
-        String prev = processedMsgs.get(key);
-        return prev != null && prev.equals(val);
+        String prev = processedMsgs.get(getProcessedKey(headers));
+        boolean dup = prev != null && prev.equals(getProcessedVal(headers));
+        if (dup) {
+            endInFlight();
+        }
+        return dup;
+    }
+
+    private static String getProcessedKey(MessageHeaders headers) {
+        return String.format(TWO_STRS,headers.get(KafkaHeaders.RECEIVED_TOPIC),headers.get(KafkaHeaders.GROUP_ID));
+    }
+
+    // partition arrives as Integer, offset as Long
+    private static String getProcessedVal(MessageHeaders headers) {
+        return String.format(TWO_DIGS,headers.get(KafkaHeaders.RECEIVED_PARTITION),headers.get(KafkaHeaders.OFFSET));
+    }
+
+    public static boolean isTransactional() {
+        return transactional;
+    }
+
+    static void setTransactional4Test(boolean value) {
+        transactional = value;
+    }
+
+    /**
+     * Checks the producer stamped expiry header and the ttl configured for the consuming binding
+     * (kafkautil.bindings.&lt;binding&gt;.ttl-ms).  An expired message is acknowledged and counted.
+     * KafkaFunctionWrapper calls this before each binding function runs and drops expired records, handlers
+     * only need it when that wrapper is disabled.
+     */
+    public static boolean skipIfExpired(Message msg) { return skipIfExpired(msg, log); }
+    public static boolean skipIfExpired(Message msg, Logger logger) {
+        MessageHeaders headers = msg.getHeaders();
+        long now = System.currentTimeMillis();
+        String topic = (String) headers.get(KafkaHeaders.RECEIVED_TOPIC);
+        boolean expired = false;
+        String expiresAt = getHeaderValue(msg, EXPIRES_AT);
+        if (expiresAt != null) {
+            try {
+                expired = now > Long.parseLong(expiresAt);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid {} header {}", EXPIRES_AT, expiresAt);
+            }
+        }
+        if (!expired && topic != null) {
+            Long ttl = topicTtlMap.get(topic);
+            Long tmstp = (Long) headers.get(KafkaHeaders.RECEIVED_TIMESTAMP);
+            expired = ttl != null && tmstp != null && now - tmstp > ttl;
+        }
+        if (expired) {
+            endInFlight();
+            Acknowledgment acknowledgment = headers.get(KafkaHeaders.ACKNOWLEDGMENT, Acknowledgment.class);
+            if (acknowledgment != null) {
+                acknowledgment.acknowledge();
+            }
+            long count = expiredCounts.computeIfAbsent(String.valueOf(topic), k -> new AtomicLong()).incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Std skip (expired #{}): {}", count, getStandardHeaders(msg));
+            }
+        }
+        return expired;
+    }
+
+    public static long getExpiredCount(String topic) {
+        AtomicLong count = expiredCounts.get(topic);
+        return count != null ? count.get() : 0L;
     }
 
     public static void commit(Message msg) { commit(msg, log); }
     public static void commit(Message msg, Logger logger) {
+        endInFlight();
+        startedRecord.remove();
         INSTANCE.sendPendingMessages();
-        INSTANCE.logProducedMsgTopics(logger);
-        String prefix = "Std commit (auto):";
+        KafkaLatencyRecorder.clear();
+        boolean catchingUp = KafkaCatchUpMode.isActive();
+        KafkaLagSampler.PartitionLag partition = KafkaLagSampler.record(msg);
+        if (!catchingUp) {
+            INSTANCE.logProducedMsgTopics(logger);
+        }
+        String prefix = transactional ? "Std commit (tx):" : "Std commit (auto):";
         Acknowledgment acknowledgment = msg.getHeaders().get(KafkaHeaders.ACKNOWLEDGMENT, Acknowledgment.class);
-        if (acknowledgment != null) {
+        // catching up, a later ack of the partition commits this offset (see KafkaCatchUpMode)
+        if (acknowledgment != null && catchingUp && !transactional && !KafkaCatchUpMode.shouldAck(partition)) {
+            KafkaCatchUpMode.defer(partition, acknowledgment);
+            prefix = "Std commit (ack deferred):";
+        } else if (acknowledgment != null) {
             acknowledgment.acknowledge();
-            prefix = "Std commit (man ack):";
+            KafkaCatchUpMode.acked(partition);
+            if (!transactional) prefix = "Std commit (man ack):";
         }
+        KafkaCatchUpMode.flushDeferred();
         long duration = checkForOvertime(msg, logger);
-        logger.info("{} {}ms {}", prefix, duration, getStandardHeaders(msg));
-        // recording as processed
-        MessageHeaders headers = msg.getHeaders();
-        String key = String.format(TWO_STRS,headers.get(KafkaHeaders.RECEIVED_TOPIC),headers.get(KafkaHeaders.GROUP_ID));
-        String val = String.format(TWO_DIGS,(Long) headers.get(KafkaHeaders.RECEIVED_PARTITION),(Long) headers.get(KafkaHeaders.OFFSET));
-        processedMsgs.put(key,val);
+        if (!catchingUp || KafkaCatchUpMode.shouldLog()) {
+            logger.info("{} {}ms {}", prefix, duration, getStandardHeaders(msg));
+        }
+        // recording as processed, in transactional mode the container commits the offset with the sent messages
+        if (!transactional) {
+            MessageHeaders headers = msg.getHeaders();
+            processedMsgs.put(getProcessedKey(headers), getProcessedVal(headers));
+        }
     }
 
     @Override
@@ -167,9 +444,20 @@ public class KafkaUtil implements ApplicationContextAware {
         INSTANCE = this;
         if (Arrays.asList(applicationContext.getBeanDefinitionNames()).contains(OM)) {
             mapper = (ObjectMapper) applicationContext.getBean(OM);
+            readers.clear();
+            writers.clear();
         } else {
             setStandardMapper();
         }
+        // opt in, a transaction id prefix alone leaves duplicate detection and pending sends as they are
+        boolean hasTxPrefix = StringUtils.hasText(applicationContext.getEnvironment().getProperty(TX_PREFIX_KEY));
+        transactional = applicationContext.getEnvironment().getProperty(TRANSACTIONAL_KEY, Boolean.class, false);
+        if (transactional && !hasTxPrefix) {
+            log.error("{} requires {}, transactional mode disabled", TRANSACTIONAL_KEY, TX_PREFIX_KEY);
+            transactional = false;
+        } else if (!transactional && hasTxPrefix) {
+            log.info("{} is set but {} is not true, KafkaUtil stays in non transactional mode", TX_PREFIX_KEY, TRANSACTIONAL_KEY);
+        }
         String maxPollTimeout = applicationContext.getEnvironment()
                 .getProperty("spring.kafka.consumer.properties.max.poll.interval.ms");
         if (StringUtils.hasText(maxPollTimeout)) {
@@ -177,6 +465,7 @@ public class KafkaUtil implements ApplicationContextAware {
         }  else {
             log.warn("spring.kafka.consumer.properties.max.poll.interval.ms not defined, value 300000 assumed");
         }
+        bindingHeaders.clear();
         try {
             Resource resource = new ClassPathResource("application.properties");
             Properties props = PropertiesLoaderUtils.loadProperties(resource);
@@ -186,6 +475,17 @@ public class KafkaUtil implements ApplicationContextAware {
                     String[] parts = keyStr.split("\\.");
                     channelTopicMap.put(parts[4], applicationContext.getEnvironment().getProperty(keyStr));
                 }
+                else if (keyStr.contains("-out-0.content-type")) {
+                    String[] parts = keyStr.split("\\.");
+                    bindingContentTypes.put(parts[4], applicationContext.getEnvironment().getProperty(keyStr));
+                }
+                else if (keyStr.contains("-in-") && keyStr.endsWith(".destination")) {
+                    String[] parts = keyStr.split("\\.");
+                    String ttl = applicationContext.getEnvironment().getProperty(String.format(TTL_KEY_FMT, parts[4]));
+                    if (StringUtils.hasText(ttl)) {
+                        putTopicTtl(applicationContext.getEnvironment().getProperty(keyStr, ""), Long.parseLong(ttl));
+                    }
+                }
                 else if (keyStr.equals("info.app.name")) {
                     appName = (String) props.get(key);
                 }
@@ -195,9 +495,38 @@ public class KafkaUtil implements ApplicationContextAware {
         }
     }
 
+    static byte[] toJsonBytes(Object payload) {
+        try {
+            return writerFor(payload.getClass()).writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize payload", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    static <T> T fromJsonBytes(byte[] bytes, Class<T> claz) {
+        try {
+            return readerFor(claz).readValue(bytes);
+        } catch (IOException e) {
+            log.error(String.format("Unable to map bytes to %s", claz.getSimpleName()), e);
+            return null;
+        }
+    }
+
+    // readers and writers are immutable and thread safe, caching them skips the per call lookups of the mapper
+    static ObjectReader readerFor(Class<?> claz) {
+        return readers.computeIfAbsent(claz, c -> mapper.readerFor(c));
+    }
+
+    static ObjectWriter writerFor(Class<?> claz) {
+        return writers.computeIfAbsent(claz, c -> mapper.writerFor(c));
+    }
+
     public static void setStandardMapper() {
         mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
                 .registerModule(new JavaTimeModule());
+        readers.clear();
+        writers.clear();
     }
 
     // extract payload String  from Message
@@ -210,15 +539,45 @@ public class KafkaUtil implements ApplicationContextAware {
     }
 
     public static <T> T getMessagePayloadAsObject(Message msg, Class <T> claz) {
+        recordStartTime(msg);
+        return convertPayload(msg, claz);
+    }
+
+    /**
+     * Only the fields at the given JSON pointers (e.g. "/id", "/header/tenant"), keyed by pointer.  Missing fields
+     * are left out, parsing stops once all are found.  Returns null when the payload is not JSON.
+     */
+    public static Map<String, Object> getPayloadFields(Message msg, String... pointers) {
+        startRecord(msg, false);
         try {
-            String desired = claz.getName();
-            String actual = msg.getPayload().getClass().getName();
-            if (desired.equals(actual)) {
-                recordStartTime(msg);
-                return (T) msg.getPayload();
+            return PayloadProjection.extract(mapper, msg.getPayload(), pointers);
+        } catch (IOException e) {
+            log.error(String.format("Unable to read fields %s of message %s", Arrays.toString(pointers), msg), e);
+            return null;
+        }
+    }
+
+    // record components filled from the top level payload fields of the same name, e.g. record Route(UUID id, String type)
+    public static <T extends Record> T getPayloadProjection(Message msg, Class<T> type) {
+        startRecord(msg, false);
+        try {
+            return PayloadProjection.project(mapper, msg.getPayload(), type);
+        } catch (IOException e) {
+            log.error(String.format("Unable to project message %s to %s", msg, type.getSimpleName()), e);
+            return null;
+        }
+    }
+
+    // same as getMessagePayloadAsObject without starting the processing clock, for replies and internal channels
+    static <T> T convertPayload(Message msg, Class <T> claz) {
+        try {
+            Object plObj = msg.getPayload();
+            if (claz.getName().equals(plObj.getClass().getName())) {
+                return (T) plObj;
             }
-            return mapper.readValue(getMessagePayloadAsString(msg), claz);
-        } catch (JsonProcessingException e) {
+            if (plObj instanceof byte[] bytes) return readerFor(claz).readValue(bytes);
+            return readerFor(claz).readValue(plObj.toString());
+        } catch (IOException e) {
             log.error(String.format("Unable to map message %s to %s", msg, claz.getSimpleName()),e);
             return null;
         }
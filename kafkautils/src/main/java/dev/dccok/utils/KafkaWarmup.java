@@ -0,0 +1,118 @@
+package dev.dccok.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Opt-in warm-up run before the stream bindings start consuming (lower lifecycle phase than the binding
+ * lifecycle), so readiness is only reported once it is done.  For every class in kafkautil.warmup.classes
+ * plus LogLevelAdjustmentMessage the cached ObjectReader/ObjectWriter are built and kafkautil.warmup.iterations
+ * encode/decode cycles are run through the KafkaUtil payload path to get Jackson and the JIT past their first calls.
+ *   kafkautil.warmup.enabled = true
+ *   kafkautil.warmup.classes = com.example.OrderMessage, com.example.StatusMessage
+ */
+@Slf4j
+@Component
+public class KafkaWarmup implements SmartLifecycle, ApplicationContextAware {
+
+    private static final String ENABLED_KEY = "kafkautil.warmup.enabled";
+    private static final String CLASSES_KEY = "kafkautil.warmup.classes";
+    private static final String ITERATIONS_KEY = "kafkautil.warmup.iterations";
+    // spring cloud stream starts its input bindings at Integer.MAX_VALUE - 1000
+    private static final int PHASE = Integer.MAX_VALUE - 2000;
+
+    private boolean enabled;
+    private int iterations = 2000;
+    private final Set<Class<?>> payloadClasses = new LinkedHashSet<>();
+    private volatile boolean warmedUp;
+    private boolean running;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        Environment env = applicationContext.getEnvironment();
+        enabled = Boolean.parseBoolean(env.getProperty(ENABLED_KEY));
+        String count = env.getProperty(ITERATIONS_KEY);
+        if (StringUtils.hasText(count)) {
+            iterations = Integer.parseInt(count);
+        }
+        payloadClasses.add(LogLevelAdjustmentMessage.class);
+        for (String name : StringUtils.commaDelimitedListToStringArray(env.getProperty(CLASSES_KEY))) {
+            try {
+                payloadClasses.add(ClassUtils.forName(name.trim(), applicationContext.getClassLoader()));
+            } catch (ClassNotFoundException e) {
+                log.error("Warm-up class {} not found", name.trim());
+            }
+        }
+    }
+
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!enabled) return;
+        long start = System.currentTimeMillis();
+        for (Class<?> claz : payloadClasses) {
+            warmUp(claz);
+        }
+        warmedUp = true;
+        log.info("Warm-up of {} payload classes, {} iterations, done in {}ms",
+                payloadClasses.size(), iterations, System.currentTimeMillis() - start);
+    }
+
+    void warmUp(Class<?> claz) {
+        KafkaUtil.readerFor(claz);
+        KafkaUtil.writerFor(claz);
+        Object sample;
+        try {
+            sample = claz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            log.warn("No default constructor for {}, only reader/writer built", claz.getName());
+            return;
+        }
+        try {
+            for (int i = 0; i < iterations; i++) {
+                byte[] bytes = KafkaUtil.toJsonBytes(sample);
+                Message<byte[]> msg = MessageBuilder.withPayload(bytes)
+                        .setHeader(KafkaHeaders.RECEIVED_TOPIC, "warmup")
+                        .setHeader(KafkaHeaders.RECEIVED_PARTITION, 0)
+                        .setHeader(KafkaHeaders.OFFSET, (long) i)
+                        .setHeader(KafkaHeaders.RECEIVED_TIMESTAMP, System.currentTimeMillis()).build();
+                KafkaUtil.convertPayload(msg, claz);
+                KafkaUtil.getStandardHeaders(msg);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Warm-up of {} failed: {}", claz.getName(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
@@ -2,9 +2,12 @@ package dev.dccok.utils;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.annotation.Bean;
@@ -13,20 +16,44 @@ import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.messaging.Message;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Configuration
 public class LogLevelAdjuster implements ApplicationContextAware {
 
+    @Autowired(required = false)
+    private DiagnosticCommands diagnostics;
+
     private String appName;
+    private String instanceId;
     private String channelTopic;
     private String channelGroup;
+    private String commandGroup;
     private boolean isOk = true;
+    private final Map<String, Restore> pendingRestores = new ConcurrentHashMap<>();
+    private ScheduledExecutorService restorer;
+
+    private record Restore(Level level, ScheduledFuture<?> future) {}
+
     private static final String APP_NAME_KEY = "info.app.name";
     private static final String DESTINATION_KEY = "spring.cloud.stream.bindings.logLevelAdjusterChannel-in-0.destination";
     private static final String DESTINATION_TOPIC = "log_level_adjustment";
     private static final String GROUP_KEY = "spring.cloud.stream.bindings.logLevelAdjusterChannel-in-0.group";
+    private static final String COMMAND_GROUP_KEY = "spring.cloud.stream.bindings.logLevelCommandChannel-in-0.group";
 
     private static final String ERR_FMT_MSG = """
             Properties for enabling log level adjustments are missing.  Confirm the presence of properties:
@@ -39,8 +66,10 @@ public class LogLevelAdjuster implements ApplicationContextAware {
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         ConfigurableEnvironment environment = (ConfigurableEnvironment) applicationContext.getEnvironment();
         appName = environment.getProperty(APP_NAME_KEY);
+        instanceId = DiagnosticCommands.resolveInstanceId(environment);
         channelTopic = environment.getProperty(DESTINATION_KEY);
         channelGroup = environment.getProperty(GROUP_KEY);
+        commandGroup = environment.getProperty(COMMAND_GROUP_KEY);
     }
 
     public boolean enableLogLevelAdjustment() {
@@ -51,43 +80,232 @@ public class LogLevelAdjuster implements ApplicationContextAware {
             isOk =  false;
             log.error(ERR_FMT_MSG, APP_NAME_KEY, DESTINATION_KEY, DESTINATION_TOPIC, GROUP_KEY, DESTINATION_TOPIC);
         }
+        if (StringUtils.hasText(commandGroup)) {
+            log.error("{} must not be set, every instance has to read the command channel", COMMAND_GROUP_KEY);
+        }
         log.info("adjustment enabled");
         return isOk;
     }
 
+    // the shared group hands each message to one instance, instance targeted messages and diagnostic commands
+    // are only taken from logLevelCommandChannel
     @Bean
     public Consumer<Message<?>> logLevelAdjusterChannel() {
-        return incomingMessage -> {
-            log.info("message accepted ok=" +isOk);
-            if (isOk) {
-                LogLevelAdjustmentMessage message = KafkaUtil.getMessagePayloadAsObject(incomingMessage, LogLevelAdjustmentMessage.class);
-                if (StringUtils.hasText(message.getApplicationName()) && !message.getApplicationName().equals(appName)) {
-                    log.debug("Logger not changed, not for this application");
-                } else {
-                    log.info("logLevelAdjusterChannel received {}", message);
-                    KafkaUtil.logStdMessageHeaders(incomingMessage, log);
-                    if (KafkaUtil.isDupMessage(incomingMessage)) {
-                        log.error("Ignoring duplicate message in logLevelAdjusterChannel");
-                        return;
-                    }
+        return incomingMessage -> handle(incomingMessage, false);
+    }
 
+    // bound without a group (anonymous, one per instance) so every instance reads every message, e.g.
+    //   spring.cloud.stream.bindings.logLevelCommandChannel-in-0.destination = log_level_command
+    @Bean
+    public Consumer<Message<?>> logLevelCommandChannel() {
+        return incomingMessage -> handle(incomingMessage, true);
+    }
+
+    private void handle(Message<?> incomingMessage, boolean perInstance) {
+        log.info("message accepted ok=" +isOk);
+        if (isOk) {
+            LogLevelAdjustmentMessage message = KafkaUtil.getMessagePayloadAsObject(incomingMessage, LogLevelAdjustmentMessage.class);
+            if (StringUtils.hasText(message.getApplicationName()) && !message.getApplicationName().equals(appName)) {
+                log.debug("Logger not changed, not for this application");
+            } else if (!perInstance && (StringUtils.hasText(message.getInstanceId()) || StringUtils.hasText(message.getCommand()))) {
+                log.error("Ignoring instance targeted message or command on the shared channel, send it to logLevelCommandChannel: {}", message);
+                KafkaUtil.commit(incomingMessage, log);
+            } else if (StringUtils.hasText(message.getInstanceId()) && !message.getInstanceId().equals(instanceId)) {
+                log.debug("Logger not changed, not for this instance");
+            } else {
+                log.info("{} received {}", perInstance ? "logLevelCommandChannel" : "logLevelAdjusterChannel", message);
+                KafkaUtil.logStdMessageHeaders(incomingMessage, log);
+                if (KafkaUtil.isDupMessage(incomingMessage)) {
+                    log.error("Ignoring duplicate message in {}", perInstance ? "logLevelCommandChannel" : "logLevelAdjusterChannel");
+                    return;
+                }
+
+                if (StringUtils.hasText(message.getCommand())) {
+                    if (diagnostics != null) {
+                        diagnostics.submit(message);
+                    } else {
+                        log.error("Diagnostic command {} ignored, DiagnosticCommands not available", message.getCommand());
+                    }
+                } else {
                     this.LogLevelAdjustmentMessage(message);
-                    KafkaUtil.commit(incomingMessage, log);
                 }
+                KafkaUtil.commit(incomingMessage, log);
             }
-        };
+        }
     }
+
+    // loggerName may be a comma separated list, "prefix.*" covers the prefix logger and everything under it,
+    // other patterns ("*.KafkaUtil") match the loggers that exist
     void LogLevelAdjustmentMessage(LogLevelAdjustmentMessage message) {
+        adjust(message, false);
+    }
 
+    // createExact: exact names are created rather than looked up, the state replay runs before most loggers exist
+    private void adjust(LogLevelAdjustmentMessage message, boolean createExact) {
         LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
-        ch.qos.logback.classic.Logger logger =
-                message.getLoggerName().equalsIgnoreCase("root") ?
-                        loggerContext.getLogger(message.getLoggerName()) : loggerContext.exists(message.getLoggerName());
-        if( logger !=null){
-            logger.setLevel(Level.toLevel(message.getLogLevel()));
-            log.info("Changed logger: {} to level {} ", message.getLoggerName(), message.getLogLevel());
-        } else {
-            log.error("Logger {} Not Found Make Sure that logger name is correct", message.getLoggerName());
+        String[] names = StringUtils.commaDelimitedListToStringArray(message.getLoggerName());
+        if (message.getSampleEvery() != null || message.getMaxPerSecond() != null || (message.getMdc() != null && !message.getMdc().isEmpty())) {
+            List<String> covered = new ArrayList<>();
+            for (String name : names) {
+                String loggerName = coveredName(name.trim());
+                if (loggerName == null) {
+                    log.error("Pattern {} not supported for sampling or MDC adjustments, use prefix.*", name.trim());
+                } else {
+                    covered.add(loggerName);
+                }
+            }
+            // all names of the message in one update of the filter
+            if (message.getMdc() != null && !message.getMdc().isEmpty()) {
+                adjustForMdc(loggerContext, message, covered);
+            } else {
+                adjustSampling(loggerContext, message, covered);
+            }
+            return;
+        }
+        // every name is resolved before any level changes, one unknown logger leaves them all as they are
+        Map<String, List<ch.qos.logback.classic.Logger>> targets = new LinkedHashMap<>();
+        for (String name : names) {
+            List<ch.qos.logback.classic.Logger> loggers = resolve(loggerContext, name.trim(), createExact);
+            if (loggers.isEmpty()) {
+                log.error("Logger {} Not Found Make Sure that logger name is correct", name.trim());
+                return;
+            }
+            targets.put(name.trim(), loggers);
+        }
+        Level level = Level.toLevel(message.getLogLevel());
+        targets.forEach((name, loggers) -> {
+            for (ch.qos.logback.classic.Logger logger : loggers) {
+                Level previous = logger.getLevel();
+                logger.setLevel(level);
+                scheduleRestore(logger, previous, message.getTtlMs());
+            }
+            if (name.endsWith(".*")) {
+                resetChildren(loggerContext, loggers.get(0).getName(), message.getTtlMs());
+            }
+            log.info("Changed logger: {} to level {} ", name, message.getLogLevel());
+        });
+    }
+
+    private static List<ch.qos.logback.classic.Logger> resolve(LoggerContext loggerContext, String name, boolean createExact) {
+        String covered = coveredName(name);
+        if (name.equalsIgnoreCase("root") || (covered != null && !covered.equals(name))) {
+            // created if needed, loggers that don't exist yet inherit from it
+            return List.of(loggerContext.getLogger(covered));
+        }
+        if (!name.contains("*")) {
+            ch.qos.logback.classic.Logger logger = createExact ? loggerContext.getLogger(name) : loggerContext.exists(name);
+            return logger != null ? List.of(logger) : List.of();
+        }
+        Pattern pattern = Pattern.compile(Arrays.stream(name.split("\\*", -1)).map(Pattern::quote).collect(Collectors.joining(".*")));
+        return loggerContext.getLoggerList().stream().filter(l -> pattern.matcher(l.getName()).matches()).toList();
+    }
+
+    // the single logger a name or prefix.* pattern covers with its children, null for other patterns
+    private static String coveredName(String name) {
+        if (name.equals("*")) return org.slf4j.Logger.ROOT_LOGGER_NAME;
+        String prefix = name.endsWith(".*") ? name.substring(0, name.length() - 2) : name;
+        return prefix.contains("*") ? null : prefix;
+    }
+
+    // explicit levels below a prefix.* adjustment are dropped so the whole subtree follows it, with a ttl they
+    // come back together with the prefix level
+    private void resetChildren(LoggerContext loggerContext, String prefix, Long ttlMs) {
+        for (ch.qos.logback.classic.Logger logger : loggerContext.getLoggerList()) {
+            if (logger.getName().startsWith(prefix + ".") && logger.getLevel() != null) {
+                scheduleRestore(logger, logger.getLevel(), ttlMs);
+                logger.setLevel(null);
+            }
+        }
+    }
+
+    // state read at startup (see LogLevelStateLoader), timed adjustments and commands are not replayed
+    void applyState(LogLevelAdjustmentMessage message) {
+        if (StringUtils.hasText(message.getApplicationName()) && !message.getApplicationName().equals(appName)) return;
+        if (StringUtils.hasText(message.getInstanceId()) && !message.getInstanceId().equals(instanceId)) return;
+        if (message.getTtlMs() != null && message.getTtlMs() > 0) return;
+        if (StringUtils.hasText(message.getCommand())) return;
+        adjust(message, true);
+    }
+
+    // a later adjustment of the logger replaces the pending restore but keeps the level from before the first
+    private void scheduleRestore(ch.qos.logback.classic.Logger logger, Level previous, Long ttlMs) {
+        Restore pending = pendingRestores.remove(logger.getName());
+        if (pending != null) {
+            pending.future().cancel(false);
+            previous = pending.level();
+        }
+        if (ttlMs == null || ttlMs <= 0) return;
+        Level restoreLevel = previous;
+        ScheduledFuture<?> future = getRestorer().schedule(() -> {
+            pendingRestores.remove(logger.getName());
+            logger.setLevel(restoreLevel);
+            log.info("Restored logger: {} to level {}", logger.getName(), restoreLevel);
+        }, ttlMs, TimeUnit.MILLISECONDS);
+        pendingRestores.put(logger.getName(), new Restore(restoreLevel, future));
+    }
+
+    private void adjustForMdc(LoggerContext loggerContext, LogLevelAdjustmentMessage message, List<String> loggerNames) {
+        if (loggerNames.isEmpty()) return;
+        MdcLevelTurboFilter filter = getMdcFilter(loggerContext);
+        Long ttlMs = message.getTtlMs();
+        long expiresAt = ttlMs != null && ttlMs > 0 ? System.currentTimeMillis() + ttlMs : 0;
+        List<MdcLevelTurboFilter.MdcOverride> overrides = loggerNames.stream()
+                .map(name -> new MdcLevelTurboFilter.MdcOverride(name, Level.toLevel(message.getLogLevel()),
+                        Map.copyOf(message.getMdc()), expiresAt)).toList();
+        filter.putAll(overrides);
+        if (expiresAt > 0) {
+            getRestorer().schedule(() -> filter.removeAll(overrides), ttlMs, TimeUnit.MILLISECONDS);
+        }
+        log.info("Changed logger: {} to level {} for MDC {}", loggerNames, message.getLogLevel(), message.getMdc());
+    }
+
+    // sampleEvery 1 and no maxPerSecond removes the logger's rule
+    private void adjustSampling(LoggerContext loggerContext, LogLevelAdjustmentMessage message, List<String> loggerNames) {
+        if (loggerNames.isEmpty()) return;
+        LogSamplingTurboFilter filter = getTurboFilter(loggerContext, LogSamplingTurboFilter.class, LogSamplingTurboFilter::new);
+        List<LogSamplingTurboFilter.SamplingRule> rules = loggerNames.stream()
+                .map(name -> new LogSamplingTurboFilter.SamplingRule(name,
+                        Level.toLevel(message.getLogLevel(), Level.INFO),
+                        message.getSampleEvery() != null ? message.getSampleEvery() : 1,
+                        message.getMaxPerSecond() != null ? message.getMaxPerSecond() : 0)).toList();
+        filter.putAll(rules);
+        if (message.getTtlMs() != null && message.getTtlMs() > 0) {
+            getRestorer().schedule(() -> filter.removeAll(rules), message.getTtlMs(), TimeUnit.MILLISECONDS);
+        }
+        log.info("Sampling logger: {} up to {}, 1 in {}, max {}/s", loggerNames, message.getLogLevel(),
+                message.getSampleEvery(), message.getMaxPerSecond());
+    }
+
+    private static MdcLevelTurboFilter getMdcFilter(LoggerContext loggerContext) {
+        return getTurboFilter(loggerContext, MdcLevelTurboFilter.class, MdcLevelTurboFilter::new);
+    }
+
+    private static synchronized <T extends TurboFilter> T getTurboFilter(LoggerContext loggerContext, Class<T> type, Supplier<T> factory) {
+        for (TurboFilter turboFilter : loggerContext.getTurboFilterList()) {
+            if (type.isInstance(turboFilter)) return type.cast(turboFilter);
+        }
+        T turboFilter = factory.get();
+        turboFilter.setContext(loggerContext);
+        turboFilter.start();
+        loggerContext.addTurboFilter(turboFilter);
+        return turboFilter;
+    }
+
+    private synchronized ScheduledExecutorService getRestorer() {
+        if (restorer == null) {
+            restorer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "log-level-restore");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return restorer;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (restorer != null) {
+            restorer.shutdownNow();
         }
     }
 }
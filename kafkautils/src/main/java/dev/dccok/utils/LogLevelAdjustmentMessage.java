@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -11,4 +13,31 @@ public class LogLevelAdjustmentMessage {
     String applicationName;
     String loggerName;
     String logLevel;
+    // previous level restored after ttlMs, null or 0 keeps the level
+    Long ttlMs;
+    // only events logged while the MDC holds all these values (e.g. username, authSub), the logger level is not changed
+    Map<String, String> mdc;
+    // sampling instead of a level change, logLevel is then the highest level thinned out (default INFO)
+    Integer sampleEvery;
+    Integer maxPerSecond;
+    // only the instance with this id (kafkautil.instance-id, default the host name) acts on the message,
+    // needs the per instance logLevelCommandChannel
+    String instanceId;
+    // diagnostic command instead of a level change, see DiagnosticCommands, logLevelCommandChannel only
+    String command;
+    // JFR settings for jfrStart (default, profile), ttlMs is the recording duration
+    String profile;
+    // destination of the DiagnosticReplyMessage, default kafkautil.diagnostics.reply-destination
+    String replyTo;
+    // number of loggers in the logCost report
+    Integer top;
+
+    public LogLevelAdjustmentMessage(String applicationName, String loggerName, String logLevel) {
+        this(applicationName, loggerName, logLevel, null, null, null, null);
+    }
+
+    public LogLevelAdjustmentMessage(String applicationName, String loggerName, String logLevel, Long ttlMs,
+                                     Map<String, String> mdc, Integer sampleEvery, Integer maxPerSecond) {
+        this(applicationName, loggerName, logLevel, ttlMs, mdc, sampleEvery, maxPerSecond, null, null, null, null, null);
+    }
 }
@@ -0,0 +1,108 @@
+package dev.dccok.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Applies the log level adjustments kept on a compacted state topic before the stream bindings start, so a new
+ * instance comes up with the fleet's current verbosity.  Producers key the state records by
+ * application/logger (tombstone to drop one), it can be the adjustment topic itself when that is compacted and keyed.
+ * Adjustments with a ttl are not replayed.
+ *   kafkautil.loglevel.state-topic = log_level_state
+ *   kafkautil.loglevel.state-timeout-ms = 30000
+ */
+@Slf4j
+@Component
+public class LogLevelStateLoader implements SmartLifecycle, ApplicationContextAware {
+
+    private static final String STATE_TOPIC_KEY = "kafkautil.loglevel.state-topic";
+    private static final String TIMEOUT_KEY = "kafkautil.loglevel.state-timeout-ms";
+    // spring cloud stream starts its input bindings at Integer.MAX_VALUE - 1000
+    private static final int PHASE = Integer.MAX_VALUE - 2000;
+
+    @Autowired
+    private ObjectProvider<LogLevelAdjuster> logLevelAdjuster;
+
+    private String stateTopic;
+    private String brokers;
+    private long timeoutMs = 30000L;
+    private boolean running;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        Environment env = applicationContext.getEnvironment();
+        stateTopic = env.getProperty(STATE_TOPIC_KEY);
+        timeoutMs = env.getProperty(TIMEOUT_KEY, Long.class, timeoutMs);
+        for (String key : KafkaLagSampler.BROKER_KEYS) {
+            brokers = env.getProperty(key);
+            if (StringUtils.hasText(brokers)) break;
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!StringUtils.hasText(stateTopic)) return;
+        if (!StringUtils.hasText(brokers)) {
+            log.error("{} set but no brokers found in {}, log levels not restored", STATE_TOPIC_KEY, String.join(", ", KafkaLagSampler.BROKER_KEYS));
+            return;
+        }
+        load(new CompactedTopicView(stateTopic, brokers, null));
+    }
+
+    void load(CompactedTopicView view) {
+        LogLevelAdjuster adjuster = logLevelAdjuster.getObject();
+        view.start();
+        try {
+            if (!view.awaitReady(Duration.ofMillis(timeoutMs))) {
+                log.warn("Log level state {} not read to the end in {}ms, applying {} entries", stateTopic, timeoutMs, view.size());
+            }
+            // broad patterns first so the more specific adjustments win
+            List<LogLevelAdjustmentMessage> messages = view.keys().stream()
+                    .map(key -> view.get(key, LogLevelAdjustmentMessage.class))
+                    .filter(Objects::nonNull)
+                    .filter(message -> StringUtils.hasText(message.getLoggerName()))
+                    .sorted(Comparator.comparingInt(LogLevelStateLoader::specificity))
+                    .toList();
+            messages.forEach(adjuster::applyState);
+            log.info("Applied {} log level adjustments from {}", messages.size(), stateTopic);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            view.close();
+        }
+    }
+
+    private static int specificity(LogLevelAdjustmentMessage message) {
+        String name = message.getLoggerName();
+        return name.equalsIgnoreCase("root") || name.equals("*") ? -1 : name.replace("*", "").length();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
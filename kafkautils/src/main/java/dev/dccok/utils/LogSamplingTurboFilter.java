@@ -0,0 +1,116 @@
+package dev.dccok.utils;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thins out the events of a logger (and its children) up to a level: keep 1 in sampleEvery and/or at most
+ * maxPerSecond.  Counters are striped by thread so busy loggers don't contend on one cache line, events the
+ * logger level drops anyway are not counted.  Added to the LoggerContext by LogLevelAdjuster.
+ */
+public class LogSamplingTurboFilter extends TurboFilter {
+
+    private static final int STRIPES = 16;
+    // one counter per 64 byte line
+    private static final int PAD = 8;
+
+    static final class SamplingRule {
+        private final String loggerName;
+        private final Level maxLevel;
+        private final int sampleEvery;
+        private final int maxPerSecond;
+        private final AtomicLongArray seen = new AtomicLongArray(STRIPES * PAD);
+        private final AtomicLongArray kept = new AtomicLongArray(STRIPES * PAD);
+        private final AtomicLong window = new AtomicLong();
+
+        SamplingRule(String loggerName, Level maxLevel, int sampleEvery, int maxPerSecond) {
+            this.loggerName = loggerName;
+            this.maxLevel = maxLevel;
+            this.sampleEvery = sampleEvery;
+            this.maxPerSecond = maxPerSecond;
+        }
+
+        String getLoggerName() {
+            return loggerName;
+        }
+
+        boolean applies(String name, Level level) {
+            return maxLevel.isGreaterOrEqual(level) && MdcLevelTurboFilter.covers(loggerName, name);
+        }
+
+        boolean keep(long nowSecond) {
+            int stripe = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PAD;
+            if (sampleEvery > 1 && seen.getAndIncrement(stripe) % sampleEvery != 0) return false;
+            if (maxPerSecond <= 0) return true;
+            long current = window.get();
+            if (current != nowSecond && window.compareAndSet(current, nowSecond)) {
+                for (int i = 0; i < STRIPES; i++) {
+                    kept.set(i * PAD, 0);
+                }
+            }
+            kept.incrementAndGet(stripe);
+            long total = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                total += kept.get(i * PAD);
+            }
+            return total <= maxPerSecond;
+        }
+    }
+
+    private volatile List<SamplingRule> rules = List.of();
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        List<SamplingRule> current = rules;
+        if (current.isEmpty() || logger == null || level == null || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        String name = logger.getName();
+        for (SamplingRule rule : current) {
+            if (rule.applies(name, level)) {
+                return rule.keep(System.currentTimeMillis() / 1000) ? FilterReply.NEUTRAL : FilterReply.DENY;
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    // replaces the rule of the same logger, most specific logger first
+    void put(SamplingRule rule) {
+        putAll(List.of(rule));
+    }
+
+    // readers see all of the rules or none of them
+    synchronized void putAll(List<SamplingRule> added) {
+        List<SamplingRule> next = new ArrayList<>(rules);
+        for (SamplingRule rule : added) {
+            next.removeIf(r -> r.getLoggerName().equals(rule.getLoggerName()));
+            if (rule.sampleEvery > 1 || rule.maxPerSecond > 0) {
+                next.add(rule);
+            }
+        }
+        next.sort((a, b) -> specificity(b) - specificity(a));
+        rules = List.copyOf(next);
+    }
+
+    private static int specificity(SamplingRule rule) {
+        return Logger.ROOT_LOGGER_NAME.equalsIgnoreCase(rule.getLoggerName()) ? -1 : rule.getLoggerName().length();
+    }
+
+    synchronized void removeAll(List<SamplingRule> removed) {
+        List<SamplingRule> next = new ArrayList<>(rules);
+        next.removeAll(removed);
+        rules = List.copyOf(next);
+    }
+
+    List<SamplingRule> getRules() {
+        return rules;
+    }
+}
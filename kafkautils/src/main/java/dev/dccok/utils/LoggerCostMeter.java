@@ -0,0 +1,187 @@
+package dev.dccok.utils;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the events and the approximate rendered bytes per logger and level that reach the root logger's
+ * appenders, to find the loggers worth turning down.  Loggers with additivity off are not seen.
+ *   kafkautil.log.events   tags logger, level
+ *   kafkautil.log.bytes    tags logger, level
+ * The logger tag is the logger name cut to its first tag-depth segments (com.capturerx.orders for
+ * com.capturerx.orders.service.OrderService), so the number of meters follows the packages, not the classes.
+ * The top loggers by bytes, with their full names, are reported through the logCost diagnostic command
+ * (see DiagnosticCommands).
+ *   kafkautil.logcost.enabled = true
+ *   kafkautil.logcost.tag-depth = 3
+ */
+@Slf4j
+@Component
+public class LoggerCostMeter implements ApplicationContextAware {
+
+    private static final String ENABLED_KEY = "kafkautil.logcost.enabled";
+    private static final String TAG_DEPTH_KEY = "kafkautil.logcost.tag-depth";
+    private static final Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR};
+    // timestamp, level, separators and line end of a typical pattern
+    private static final int LINE_OVERHEAD = 40;
+    private static final int FRAME_BYTES = 80;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final Map<String, LoggerCost> costs = new ConcurrentHashMap<>();
+    // the metered totals per logger name prefix
+    private final Map<String, LoggerCost> taggedCosts = new ConcurrentHashMap<>();
+    private int tagDepth = 3;
+    private CostAppender appender;
+
+    public record CostEntry(String logger, Level level, long events, long bytes) {}
+
+    static final class LoggerCost {
+        final String logger;
+        final LongAdder[] events = new LongAdder[LEVELS.length];
+        final LongAdder[] bytes = new LongAdder[LEVELS.length];
+        // a racing second registration returns the existing meters
+        final boolean[] registered = new boolean[LEVELS.length];
+        // the prefix totals the logger is also counted in, null on the prefix totals themselves
+        LoggerCost tagged;
+
+        LoggerCost(String logger) {
+            this.logger = logger;
+            for (int i = 0; i < LEVELS.length; i++) {
+                events[i] = new LongAdder();
+                bytes[i] = new LongAdder();
+            }
+        }
+    }
+
+    private final class CostAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+        @Override
+        protected void append(ILoggingEvent event) {
+            LoggerCost cost = costs.get(event.getLoggerName());
+            if (cost == null) {
+                cost = costs.computeIfAbsent(event.getLoggerName(), LoggerCostMeter.this::newCost);
+            }
+            int idx = levelIndex(event.getLevel());
+            LoggerCost tagged = cost.tagged;
+            if (!tagged.registered[idx]) {
+                register(tagged, idx);
+            }
+            long bytes = approximateBytes(event);
+            cost.events[idx].increment();
+            cost.bytes[idx].add(bytes);
+            tagged.events[idx].increment();
+            tagged.bytes[idx].add(bytes);
+        }
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        tagDepth = applicationContext.getEnvironment().getProperty(TAG_DEPTH_KEY, Integer.class, tagDepth);
+        if (Boolean.parseBoolean(applicationContext.getEnvironment().getProperty(ENABLED_KEY))) {
+            start((LoggerContext) LoggerFactory.getILoggerFactory());
+        }
+    }
+
+    synchronized void start(LoggerContext loggerContext) {
+        if (appender != null) return;
+        appender = new CostAppender();
+        appender.setName("KAFKAUTIL_LOG_COST");
+        appender.setContext(loggerContext);
+        appender.start();
+        loggerContext.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME).addAppender(appender);
+        log.info("Logger cost accounting enabled");
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (appender == null) return;
+        ((LoggerContext) appender.getContext()).getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME).detachAppender(appender);
+        appender.stop();
+        appender = null;
+    }
+
+    private LoggerCost newCost(String logger) {
+        LoggerCost cost = new LoggerCost(logger);
+        cost.tagged = taggedCosts.computeIfAbsent(tagName(logger, tagDepth), LoggerCost::new);
+        return cost;
+    }
+
+    static String tagName(String logger, int depth) {
+        int end = -1;
+        for (int i = 0; i < depth; i++) {
+            end = logger.indexOf('.', end + 1);
+            if (end < 0) return logger;
+        }
+        return logger.substring(0, end);
+    }
+
+    // TRACE 5000, DEBUG 10000 ... ERROR 40000
+    private static int levelIndex(Level level) {
+        return Math.min(level.levelInt / 10000, LEVELS.length - 1);
+    }
+
+    static long approximateBytes(ILoggingEvent event) {
+        long total = LINE_OVERHEAD + event.getLoggerName().length() + event.getThreadName().length()
+                + event.getFormattedMessage().length();
+        for (IThrowableProxy t = event.getThrowableProxy(); t != null; t = t.getCause()) {
+            total += t.getClassName().length() + (t.getMessage() != null ? t.getMessage().length() : 0)
+                    + (long) t.getStackTraceElementProxyArray().length * FRAME_BYTES;
+        }
+        return total;
+    }
+
+    private void register(LoggerCost cost, int idx) {
+        cost.registered[idx] = true;
+        MeterRegistry registry = meterRegistry != null ? meterRegistry.getIfAvailable() : null;
+        if (registry == null) return;
+        String level = LEVELS[idx].levelStr;
+        FunctionCounter.builder("kafkautil.log.events", cost.events[idx], LongAdder::sum)
+                .tag("logger", cost.logger).tag("level", level).register(registry);
+        FunctionCounter.builder("kafkautil.log.bytes", cost.bytes[idx], LongAdder::sum)
+                .tag("logger", cost.logger).tag("level", level).baseUnit("bytes").register(registry);
+    }
+
+    public List<CostEntry> top(int n) {
+        List<CostEntry> entries = new ArrayList<>();
+        for (LoggerCost cost : costs.values()) {
+            for (int i = 0; i < LEVELS.length; i++) {
+                long events = cost.events[i].sum();
+                if (events > 0) {
+                    entries.add(new CostEntry(cost.logger, LEVELS[i], events, cost.bytes[i].sum()));
+                }
+            }
+        }
+        entries.sort(Comparator.comparingLong(CostEntry::bytes).reversed());
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    public String report(int n) {
+        StringBuilder sb = new StringBuilder(String.format("%-12s %-12s %-6s %s%n", "bytes", "events", "level", "logger"));
+        for (CostEntry entry : top(n)) {
+            sb.append(String.format("%-12d %-12d %-6s %s%n", entry.bytes(), entry.events(), entry.level(), entry.logger()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package dev.dccok.utils;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accepts events of a logger (and its children) at or above an override level when the MDC holds the given
+ * values, whatever the logger level.  Added to the LoggerContext by LogLevelAdjuster, with no overrides it
+ * costs one volatile read per log call.
+ */
+public class MdcLevelTurboFilter extends TurboFilter {
+
+    record MdcOverride(String loggerName, Level level, Map<String, String> mdc, long expiresAt) {
+
+        boolean matches(String name, Level eventLevel, long now) {
+            if (!eventLevel.isGreaterOrEqual(level) || (expiresAt > 0 && now > expiresAt)) return false;
+            if (!covers(loggerName, name)) return false;
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                if (!entry.getValue().equals(MDC.get(entry.getKey()))) return false;
+            }
+            return true;
+        }
+
+        boolean sameTarget(MdcOverride other) {
+            return loggerName.equals(other.loggerName) && mdc.equals(other.mdc);
+        }
+    }
+
+    // the logger itself or one of its children, root covers all
+    static boolean covers(String loggerName, String name) {
+        return Logger.ROOT_LOGGER_NAME.equalsIgnoreCase(loggerName) || name.equals(loggerName)
+                || (name.startsWith(loggerName) && name.charAt(loggerName.length()) == '.');
+    }
+
+    // copy on write, read on every log call
+    private volatile List<MdcOverride> overrides = List.of();
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        List<MdcOverride> current = overrides;
+        if (current.isEmpty() || logger == null) return FilterReply.NEUTRAL;
+        long now = System.currentTimeMillis();
+        for (MdcOverride override : current) {
+            if (override.matches(logger.getName(), level, now)) return FilterReply.ACCEPT;
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    // replaces an override of the same logger and MDC values, level OFF only removes it
+    void put(MdcOverride override) {
+        putAll(List.of(override));
+    }
+
+    // readers see all of the overrides or none of them
+    synchronized void putAll(List<MdcOverride> added) {
+        List<MdcOverride> next = new ArrayList<>(overrides);
+        for (MdcOverride override : added) {
+            next.removeIf(override::sameTarget);
+            if (!Level.OFF.equals(override.level())) {
+                next.add(override);
+            }
+        }
+        overrides = List.copyOf(next);
+    }
+
+    synchronized void removeAll(List<MdcOverride> removed) {
+        List<MdcOverride> next = new ArrayList<>(overrides);
+        next.removeAll(removed);
+        overrides = List.copyOf(next);
+    }
+
+    List<MdcOverride> getOverrides() {
+        return overrides;
+    }
+}
@@ -0,0 +1,112 @@
+package dev.dccok.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.RecordComponent;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pulls a few fields out of a JSON payload without binding it.  The payload is token streamed, subtrees that
+ * can't hold a requested pointer are skipped and parsing stops once every pointer is found.  Backs
+ * KafkaUtil.getPayloadFields and KafkaUtil.getPayloadProjection.
+ */
+class PayloadProjection {
+
+    private static final Map<Class<?>, RecordShape> shapes = new ConcurrentHashMap<>();
+
+    private record RecordShape(Constructor<?> constructor, String[] pointers, Class<?>[] types) {}
+
+    private PayloadProjection() {
+    }
+
+    static Map<String, Object> extract(ObjectMapper mapper, Object payload, String... pointers) throws IOException {
+        Set<String> wanted = new HashSet<>(Arrays.asList(pointers));
+        Map<String, Object> found = new HashMap<>();
+        try (JsonParser parser = createParser(mapper, payload)) {
+            JsonToken token;
+            while (found.size() < wanted.size() && (token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME || token.isStructEnd()) continue;
+                if (token.isStructStart()) {
+                    // a new container's context has no name/index yet, the parent's holds its path
+                    String path = parser.getParsingContext().getParent().pathAsPointer().toString();
+                    if (wanted.contains(path)) {
+                        found.put(path, mapper.treeToValue(parser.readValueAsTree(), Object.class));
+                    } else if (!isPrefix(path, wanted)) {
+                        parser.skipChildren();
+                    }
+                    continue;
+                }
+                String path = parser.getParsingContext().pathAsPointer().toString();
+                if (wanted.contains(path)) {
+                    found.put(path, scalar(parser, token));
+                }
+            }
+        }
+        return found;
+    }
+
+    static <T extends Record> T project(ObjectMapper mapper, Object payload, Class<T> type) throws IOException {
+        RecordShape shape = shapes.computeIfAbsent(type, PayloadProjection::shapeOf);
+        Map<String, Object> found = extract(mapper, payload, shape.pointers());
+        Object[] args = new Object[shape.pointers().length];
+        for (int i = 0; i < args.length; i++) {
+            Object value = found.get(shape.pointers()[i]);
+            args[i] = value != null ? mapper.convertValue(value, shape.types()[i])
+                    : shape.types()[i].isPrimitive() ? Array.get(Array.newInstance(shape.types()[i], 1), 0) : null;
+        }
+        try {
+            return type.cast(shape.constructor().newInstance(args));
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalArgumentException("Unable to create projection " + type.getSimpleName(), e);
+        }
+    }
+
+    private static JsonParser createParser(ObjectMapper mapper, Object payload) throws IOException {
+        if (payload instanceof byte[] bytes) return mapper.createParser(bytes);
+        if (payload instanceof String string) return mapper.createParser(string);
+        return mapper.treeAsTokens(mapper.valueToTree(payload));
+    }
+
+    private static boolean isPrefix(String path, Set<String> wanted) {
+        String parent = path + "/";
+        for (String pointer : wanted) {
+            if (pointer.startsWith(parent)) return true;
+        }
+        return false;
+    }
+
+    private static Object scalar(JsonParser parser, JsonToken token) throws IOException {
+        return switch (token) {
+            case VALUE_STRING -> parser.getText();
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getNumberValue();
+            case VALUE_TRUE, VALUE_FALSE -> parser.getBooleanValue();
+            case VALUE_EMBEDDED_OBJECT -> parser.getEmbeddedObject();
+            default -> null;
+        };
+    }
+
+    // record components map to the top level fields of the same name
+    private static RecordShape shapeOf(Class<?> type) {
+        RecordComponent[] components = type.getRecordComponents();
+        String[] pointers = new String[components.length];
+        Class<?>[] types = new Class<?>[components.length];
+        for (int i = 0; i < components.length; i++) {
+            pointers[i] = "/" + components[i].getName();
+            types[i] = components[i].getType();
+        }
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor(types);
+            constructor.setAccessible(true);
+            return new RecordShape(constructor, pointers, types);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No canonical constructor for " + type.getName(), e);
+        }
+    }
+}
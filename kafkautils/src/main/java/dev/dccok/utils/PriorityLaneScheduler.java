@@ -0,0 +1,125 @@
+package dev.dccok.utils;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.stream.binding.BindingsLifecycleController;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pauses the low priority input bindings while a high priority binding has records in flight or is lagging,
+ * and resumes them once the high priority lane has been idle for kafkautil.priority.resume-delay-ms.
+ * In-flight work comes from the KafkaUtil record timing, lag from KafkaLagSampler when it is sampling.
+ *   kafkautil.priority.high-bindings = urgentChannel-in-0
+ *   kafkautil.priority.low-bindings = bulkChannel-in-0, backfillChannel-in-0
+ *   kafkautil.priority.lag-threshold = 0               (records behind before the high lane counts as busy)
+ *   kafkautil.priority.check-interval-ms = 200
+ *   kafkautil.priority.resume-delay-ms = 2000
+ */
+@Slf4j
+@Component
+public class PriorityLaneScheduler implements ApplicationContextAware {
+
+    private static final String PREFIX = "kafkautil.priority.";
+    private static final String DESTINATION_FMT = "spring.cloud.stream.bindings.%s.destination";
+
+    @Autowired
+    private ObjectProvider<BindingsLifecycleController> bindingsController;
+
+    private final List<String> highTopics = new ArrayList<>();
+    private final List<String> lowBindings = new ArrayList<>();
+    private long lagThreshold;
+    private long checkIntervalMs = 200L;
+    private long resumeDelayMs = 2000L;
+    private ScheduledExecutorService checker;
+    private boolean lowPaused;
+    private long highIdleSince;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        Environment env = applicationContext.getEnvironment();
+        for (String binding : StringUtils.commaDelimitedListToStringArray(env.getProperty(PREFIX + "high-bindings"))) {
+            String topic = env.getProperty(String.format(DESTINATION_FMT, binding.trim()));
+            if (StringUtils.hasText(topic)) {
+                highTopics.add(topic);
+            } else {
+                log.error("No destination for high priority binding {}", binding.trim());
+            }
+        }
+        for (String binding : StringUtils.commaDelimitedListToStringArray(env.getProperty(PREFIX + "low-bindings"))) {
+            lowBindings.add(binding.trim());
+        }
+        lagThreshold = env.getProperty(PREFIX + "lag-threshold", Long.class, 0L);
+        checkIntervalMs = env.getProperty(PREFIX + "check-interval-ms", Long.class, checkIntervalMs);
+        resumeDelayMs = env.getProperty(PREFIX + "resume-delay-ms", Long.class, resumeDelayMs);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startChecking() {
+        if (highTopics.isEmpty() || lowBindings.isEmpty()) return;
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "kafka-priority-lanes");
+            t.setDaemon(true);
+            return t;
+        });
+        checker.scheduleWithFixedDelay(() -> check(System.currentTimeMillis()), checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Priority lanes: {} pause while {} busy", lowBindings, highTopics);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    boolean isHighLaneBusy() {
+        for (String topic : highTopics) {
+            if (KafkaUtil.getInFlightCount(topic) > 0 || KafkaLagSampler.getTopicLag(topic) > lagThreshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isLowPaused() {
+        return lowPaused;
+    }
+
+    void check(long now) {
+        try {
+            if (isHighLaneBusy()) {
+                highIdleSince = 0;
+                if (!lowPaused) {
+                    lowBindings.forEach(b -> bindingsController.getObject().pause(b));
+                    lowPaused = true;
+                    log.info("Paused low priority bindings {}", lowBindings);
+                }
+            } else if (lowPaused) {
+                if (highIdleSince == 0) {
+                    highIdleSince = now;
+                } else if (now - highIdleSince >= resumeDelayMs) {
+                    lowBindings.forEach(b -> bindingsController.getObject().resume(b));
+                    lowPaused = false;
+                    log.info("Resumed low priority bindings {}", lowBindings);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Priority lane check failed", e);
+        }
+    }
+}
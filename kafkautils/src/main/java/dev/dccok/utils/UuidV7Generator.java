@@ -0,0 +1,49 @@
+package dev.dccok.utils;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time ordered version 7 UUIDs (RFC 9562): 48 bit unix millis, then a 16 bit sequence in rand_a and the top of
+ * rand_b, then 58 random bits.  Threads claim blocks of sequence numbers for the current millisecond from one
+ * AtomicLong with a CAS and hand them out locally, so ids never collide across threads and are monotonic per
+ * thread.  A sequence overflow borrows the next millisecond, a clock step back keeps using the last one.
+ */
+public final class UuidV7Generator {
+
+    private static final int SEQ_BITS = 16;
+    private static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
+    private static final int BLOCK = 64;
+
+    // (millis << SEQ_BITS) | next unclaimed sequence
+    private static final AtomicLong claimed = new AtomicLong();
+    private static final ThreadLocal<long[]> blocks = ThreadLocal.withInitial(() -> new long[]{0, 0});
+
+    private UuidV7Generator() {
+    }
+
+    public static UUID next() {
+        long now = System.currentTimeMillis();
+        long[] block = blocks.get();
+        if (block[0] >= block[1] || (block[0] >>> SEQ_BITS) < now) {
+            block[0] = claim(now);
+            block[1] = block[0] + BLOCK;
+        }
+        long value = block[0]++;
+        long seq = value & SEQ_MASK;
+        long msb = (value >>> SEQ_BITS) << 16 | 0x7000L | seq >>> 4;
+        long lsb = 0x8000000000000000L | (seq & 0xFL) << 58 | ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFL;
+        return new UUID(msb, lsb);
+    }
+
+    private static long claim(long now) {
+        while (true) {
+            long current = claimed.get();
+            long start = (current >>> SEQ_BITS) >= now ? current : now << SEQ_BITS;
+            if (claimed.compareAndSet(current, start + BLOCK)) {
+                return start;
+            }
+        }
+    }
+}
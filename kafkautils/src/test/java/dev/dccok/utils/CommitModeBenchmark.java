@@ -0,0 +1,168 @@
+package dev.dccok.utils;
+
+import ch.qos.logback.classic.Logger;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.kafka.support.converter.MessagingMessageConverter;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consume, sendAtCommit and commit of a batch of records against an embedded broker, in the default mode (manual
+ * ack per record, dedup bookkeeping) and in the transactional mode (one producer transaction per record carrying
+ * the sent message and the consumed offset).  Each invocation produces RECORDS records and waits until the
+ * listener has committed all of them, so the time covers the broker round trips of both modes.  The StreamBridge
+ * of KafkaUtil is replaced by a KafkaTemplate on the container's producer factory, a binder is not needed.
+ * Not picked up by surefire, run with:
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       "-Dexec.args=-cp %classpath dev.dccok.utils.CommitModeBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CommitModeBenchmark {
+
+    private static final int RECORDS = 1000;
+    private static final String IN = "bench_in";
+    private static final String OUT = "bench_out";
+
+    @Param({"false", "true"})
+    boolean transactional;
+
+    private EmbeddedKafkaBroker broker;
+    private KafkaTemplate<String, byte[]> inputTemplate;
+    private KafkaMessageListenerContainer<String, byte[]> container;
+    private volatile CountDownLatch done;
+    private byte[] inbound;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // the per record info logging would dominate both modes, the embedded broker's is noise
+        ((Logger) LoggerFactory.getLogger(KafkaUtil.class)).setLevel(ch.qos.logback.classic.Level.WARN);
+        String[] brokerLoggers = {"org.apache.kafka", "kafka", "state.change.logger", "org.apache.zookeeper", "org.springframework.kafka"};
+        for (String name : brokerLoggers) {
+            ((Logger) LoggerFactory.getLogger(name)).setLevel(ch.qos.logback.classic.Level.ERROR);
+        }
+        broker = new EmbeddedKafkaBroker(1, false, 1, IN, OUT)
+                .brokerProperty("transaction.state.log.replication.factor", "1")
+                .brokerProperty("transaction.state.log.min.isr", "1");
+        broker.afterPropertiesSet();
+
+        inputTemplate = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(producerProps()));
+        KafkaUtil.setStandardMapper();
+        inbound = KafkaUtil.toJsonBytes(new LogLevelAdjustmentMessage("bench", "dev.dccok", "INFO"));
+
+        DefaultKafkaProducerFactory<String, byte[]> outputFactory = new DefaultKafkaProducerFactory<>(producerProps());
+        ContainerProperties containerProps = new ContainerProperties(IN);
+        if (transactional) {
+            // offsets are sent to the transaction by the container after each record
+            outputFactory.setTransactionIdPrefix("bench-tx-");
+            containerProps.setTransactionManager(new KafkaTransactionManager<>(outputFactory));
+            containerProps.setAckMode(ContainerProperties.AckMode.RECORD);
+        } else {
+            containerProps.setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        }
+        KafkaTemplate<String, byte[]> outputTemplate = new KafkaTemplate<>(outputFactory);
+        StreamBridge streamBridge = Mockito.mock(StreamBridge.class);
+        Mockito.when(streamBridge.send(ArgumentMatchers.anyString(), ArgumentMatchers.any())).thenAnswer(call -> {
+            Message<?> message = call.getArgument(1);
+            outputTemplate.send(OUT, KafkaUtil.toJsonBytes(message.getPayload()));
+            return true;
+        });
+        KafkaUtil kafkaUtil = new KafkaUtil();
+        ReflectionTestUtils.setField(kafkaUtil, "streamBridge", streamBridge);
+        KafkaUtil.clearProcessedMsgs4Test(kafkaUtil);
+        KafkaUtil.setTransactional4Test(transactional);
+
+        MessagingMessageConverter converter = new MessagingMessageConverter();
+        Message<LogLevelAdjustmentMessage> outbound = MessageBuilder
+                .withPayload(new LogLevelAdjustmentMessage("bench", "dev.dccok.out", "DEBUG")).build();
+        containerProps.setMessageListener((AcknowledgingMessageListener<String, byte[]>) (rec, ack) -> {
+            Message<?> msg = converter.toMessage(rec, ack, null, byte[].class);
+            if (!KafkaUtil.isDupMessage(msg)) {
+                KafkaUtil.getMessagePayloadAsObject(msg, LogLevelAdjustmentMessage.class);
+                kafkaUtil.sendAtCommit("benchOut-out-0", outbound);
+            }
+            KafkaUtil.commit(msg, NOPLogger.NOP_LOGGER);
+            done.countDown();
+        });
+        container = new KafkaMessageListenerContainer<>(new DefaultKafkaConsumerFactory<>(consumerProps()), containerProps);
+        container.start();
+        ContainerTestUtils.waitForAssignment(container, 1);
+    }
+
+    private Map<String, Object> producerProps() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        return props;
+    }
+
+    private Map<String, Object> consumerProps() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "bench-" + transactional);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        return props;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        container.stop();
+        inputTemplate.destroy();
+        broker.destroy();
+        KafkaUtil.setTransactional4Test(false);
+    }
+
+    @Benchmark
+    public void consumeSendCommit() throws InterruptedException {
+        done = new CountDownLatch(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            inputTemplate.send(IN, "key-" + i, inbound);
+        }
+        inputTemplate.flush();
+        if (!done.await(2, TimeUnit.MINUTES)) {
+            throw new IllegalStateException(done.getCount() + " records not committed");
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CommitModeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,132 @@
+package dev.dccok.utils;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactedTopicViewTest {
+
+    private static final String TOPIC = "reference_data";
+    private static final TopicPartition TP = new TopicPartition(TOPIC, 0);
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void init() {
+        KafkaUtil.setStandardMapper();
+    }
+
+    private MockConsumer<String, byte[]> mockConsumer(long beginning, long end) {
+        MockConsumer<String, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.updatePartitions(TOPIC, List.of(new PartitionInfo(TOPIC, 0, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(TP, beginning));
+        consumer.updateEndOffsets(Map.of(TP, end));
+        return consumer;
+    }
+
+    @Test
+    void loadsTopicAndRestoresSnapshot() throws InterruptedException {
+        Path snapshot = dir.resolve("reference.snap");
+        MockConsumer<String, byte[]> consumer = mockConsumer(0L, 3L);
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 0L, "a", "{\"sender\":\"one\"}".getBytes()));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 1L, "b", "{\"sender\":\"two\"}".getBytes()));
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 2L, "a", null));
+        });
+
+        CompactedTopicView view = new CompactedTopicView(TOPIC, consumer, snapshot);
+        view.start();
+        assertTrue(view.awaitReady(Duration.ofSeconds(5)));
+        assertNull(view.get("a"));
+        assertEquals("two", view.get("b", WorkerMessage.class).getSender());
+        view.close();
+        assertTrue(Files.exists(snapshot));
+
+        MockConsumer<String, byte[]> restartConsumer = mockConsumer(0L, 4L);
+        restartConsumer.schedulePollTask(() ->
+            restartConsumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 3L, "c", "{\"sender\":\"three\"}".getBytes())));
+
+        CompactedTopicView restarted = new CompactedTopicView(TOPIC, restartConsumer, snapshot);
+        restarted.start();
+        assertEquals("two", restarted.get("b", WorkerMessage.class).getSender());
+        assertTrue(restarted.awaitReady(Duration.ofSeconds(5)));
+        assertEquals("three", restarted.get("c", WorkerMessage.class).getSender());
+        assertEquals(2, restarted.size());
+        restarted.close();
+    }
+
+    @Test
+    void restoredValuesCompactedOnceReplaced() throws InterruptedException {
+        Path snapshot = dir.resolve("reference.snap");
+        int megabyte = 1 << 20;
+        MockConsumer<String, byte[]> consumer = mockConsumer(0L, 3L);
+        consumer.schedulePollTask(() -> {
+            for (int i = 0; i < 3; i++) {
+                consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, i, "k" + i, new byte[megabyte]));
+            }
+        });
+        CompactedTopicView view = new CompactedTopicView(TOPIC, consumer, snapshot);
+        view.start();
+        assertTrue(view.awaitReady(Duration.ofSeconds(5)));
+        view.close();
+
+        MockConsumer<String, byte[]> restartConsumer = mockConsumer(0L, 5L);
+        restartConsumer.schedulePollTask(() -> {
+            restartConsumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 3L, "k0", null));
+            restartConsumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 4L, "k1", null));
+        });
+        CompactedTopicView restarted = new CompactedTopicView(TOPIC, restartConsumer, snapshot);
+        restarted.start();
+        assertTrue(restarted.awaitReady(Duration.ofSeconds(5)));
+
+        // two of three restored values deleted, the last one copied off the mapping
+        assertEquals(megabyte, restarted.getLiveBytes());
+        assertEquals(megabyte, restarted.getAllocatedBytes());
+        assertEquals(megabyte, restarted.get("k2").length);
+        restarted.close();
+    }
+
+    @Test
+    void readyImmediatelyForEmptyTopic() {
+        CompactedTopicView view = new CompactedTopicView(TOPIC, mockConsumer(0L, 0L), null);
+        view.start();
+        assertTrue(view.isReady());
+        view.close();
+    }
+
+    @Test
+    void consumerProperties_keepClientSettingsAndOverrideGroupAndDeserializers() {
+        Properties props = CompactedTopicView.consumerProperties(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "broker:9093",
+                "security.protocol", "SASL_SSL",
+                "sasl.mechanism", "SCRAM-SHA-512",
+                ConsumerConfig.GROUP_ID_CONFIG, "app-group",
+                ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true,
+                ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class));
+
+        assertEquals("broker:9093", props.get(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG));
+        assertEquals("SASL_SSL", props.get("security.protocol"));
+        assertEquals("SCRAM-SHA-512", props.get("sasl.mechanism"));
+        assertFalse(props.containsKey(ConsumerConfig.GROUP_ID_CONFIG));
+        assertEquals(false, props.get(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG));
+        assertEquals(ByteArrayDeserializer.class, props.get(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG));
+    }
+}
@@ -0,0 +1,123 @@
+package dev.dccok.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DiagnosticCommandsTest {
+
+    @Mock
+    KafkaUtil kafkaUtil;
+
+    @InjectMocks
+    DiagnosticCommands diagnostics;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        ApplicationContext appCtx = mock(ApplicationContext.class);
+        when(appCtx.getEnvironment()).thenReturn(new MockEnvironment()
+                .withProperty("info.app.name", "ValidApp")
+                .withProperty("kafkautil.instance-id", "pod-1")
+                .withProperty("kafkautil.diagnostics.enabled", "true")
+                .withProperty("kafkautil.diagnostics.dir", dir.toString())
+                .withProperty("kafkautil.diagnostics.reply-destinations", "ops_replies"));
+        diagnostics.setApplicationContext(appCtx);
+    }
+
+    @AfterEach
+    void teardown() {
+        diagnostics.close();
+    }
+
+    private static LogLevelAdjustmentMessage command(String command) {
+        LogLevelAdjustmentMessage message = new LogLevelAdjustmentMessage("ValidApp", null, null);
+        message.setCommand(command);
+        message.setInstanceId("pod-1");
+        return message;
+    }
+
+    private DiagnosticReplyMessage lastReply(String destination) {
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(kafkaUtil, atLeastOnce()).send(eq(destination), sent.capture());
+        List<Message> replies = sent.getAllValues();
+        return (DiagnosticReplyMessage) replies.get(replies.size() - 1).getPayload();
+    }
+
+    @Test
+    void threadDump_repliedOnDefaultDestination() {
+        diagnostics.execute(command(DiagnosticCommands.THREAD_DUMP));
+
+        DiagnosticReplyMessage reply = lastReply("log_level_adjustment_reply");
+        assertTrue(reply.isSuccess());
+        assertEquals("pod-1", reply.getInstanceId());
+        assertTrue(reply.getOutput().contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    void classHistogram_repliedOnRequestedDestination() {
+        LogLevelAdjustmentMessage message = command(DiagnosticCommands.CLASS_HISTOGRAM);
+        message.setReplyTo("ops_replies");
+        diagnostics.execute(message);
+
+        DiagnosticReplyMessage reply = lastReply("ops_replies");
+        assertTrue(reply.isSuccess());
+        assertTrue(reply.getOutput().contains("java.lang.String"));
+    }
+
+    @Test
+    void unlistedReplyTo_repliedOnDefaultDestination() {
+        LogLevelAdjustmentMessage message = command(DiagnosticCommands.THREAD_DUMP);
+        message.setReplyTo("payments_in");
+        diagnostics.execute(message);
+
+        assertTrue(lastReply("log_level_adjustment_reply").isSuccess());
+        verify(kafkaUtil, never()).send(eq("payments_in"), any(Message.class));
+    }
+
+    @Test
+    void jfrStartStop_recordingWritten() throws Exception {
+        LogLevelAdjustmentMessage start = command(DiagnosticCommands.JFR_START);
+        start.setProfile("profile");
+        start.setTtlMs(60000L);
+        diagnostics.execute(start);
+        DiagnosticReplyMessage started = lastReply("log_level_adjustment_reply");
+        assertTrue(started.isSuccess(), started.getOutput());
+
+        diagnostics.execute(command(DiagnosticCommands.JFR_STOP));
+        DiagnosticReplyMessage stopped = lastReply("log_level_adjustment_reply");
+        assertTrue(stopped.isSuccess(), stopped.getOutput());
+        assertEquals(started.getFile(), stopped.getFile());
+        assertTrue(Files.size(Path.of(stopped.getFile())) > 0);
+    }
+
+    @Test
+    void unknownCommand_failureReplied() {
+        diagnostics.execute(command("heapDump"));
+
+        DiagnosticReplyMessage reply = lastReply("log_level_adjustment_reply");
+        assertFalse(reply.isSuccess());
+        assertTrue(reply.getOutput().contains("Unknown diagnostic command heapDump"));
+        verify(kafkaUtil, times(1)).send(any(), any(Message.class));
+    }
+}
@@ -0,0 +1,29 @@
+package dev.dccok.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InquisitiveUUIDGeneratorTest {
+
+    static class NoIdEntity {
+        public String getName() { return "none"; }
+    }
+
+    @Test
+    void getExistingId_usesGetId() {
+        WorkerMessage entity = new WorkerMessage();
+        entity.setId(null);
+        assertNull(InquisitiveUUIDGenerator.getExistingId(entity));
+        entity.setId(UUID.randomUUID());
+        assertEquals(entity.getId(), InquisitiveUUIDGenerator.getExistingId(entity));
+    }
+
+    @Test
+    void getExistingId_noAccessor() {
+        assertNull(InquisitiveUUIDGenerator.getExistingId(new NoIdEntity()));
+        assertNull(InquisitiveUUIDGenerator.getExistingId(new NoIdEntity()));
+    }
+}
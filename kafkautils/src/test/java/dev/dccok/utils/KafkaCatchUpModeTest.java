@@ -0,0 +1,149 @@
+package dev.dccok.utils;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class KafkaCatchUpModeTest {
+
+    @Mock
+    KafkaUtil kafkaUtil;
+
+    @Mock
+    ApplicationContext appCtx;
+
+    @Mock
+    ConfigurableEnvironment env;
+
+    @Mock
+    Acknowledgment acknowledgment;
+
+    private final KafkaCatchUpMode catchUpMode = new KafkaCatchUpMode();
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.openMocks(this);
+        KafkaUtil.clearProcessedMsgs4Test(kafkaUtil);
+        KafkaLagSampler.clearPartitions4Test();
+        KafkaCatchUpMode.setActive4Test(false);
+        when(appCtx.getEnvironment()).thenReturn(env);
+        when(env.getProperty("kafkautil.catchup.lag-threshold", Long.class, 0L)).thenReturn(1000L);
+        when(env.getProperty("kafkautil.catchup.exit-lag", Long.class, 100L)).thenReturn(100L);
+        when(env.getProperty(eq("kafkautil.catchup.log-every"), eq(Integer.class), anyInt())).thenReturn(10);
+        when(env.getProperty(eq("kafkautil.catchup.ack-every"), eq(Integer.class), anyInt())).thenReturn(5);
+        catchUpMode.setApplicationContext(appCtx);
+    }
+
+    @AfterEach
+    void reset() {
+        KafkaCatchUpMode.setActive4Test(false);
+    }
+
+    private Message<?> consumed(long offset) {
+        return MessageBuilder.withPayload("{}")
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "catchup_topic")
+                .setHeader(KafkaHeaders.GROUP_ID, "catchup_group")
+                .setHeader(KafkaHeaders.RECEIVED_PARTITION, 0)
+                .setHeader(KafkaHeaders.OFFSET, offset)
+                .setHeader(KafkaHeaders.ACKNOWLEDGMENT, acknowledgment).build();
+    }
+
+    @Test
+    void update_switchesWithHysteresisAndPublishes() {
+        catchUpMode.update(999);
+        assertFalse(KafkaCatchUpMode.isActive());
+        catchUpMode.update(1000);
+        assertTrue(KafkaCatchUpMode.isActive());
+        catchUpMode.update(500);
+        assertTrue(KafkaCatchUpMode.isActive());
+        catchUpMode.update(100);
+        assertFalse(KafkaCatchUpMode.isActive());
+
+        ArgumentCaptor<KafkaCatchUpEvent> events = ArgumentCaptor.forClass(KafkaCatchUpEvent.class);
+        verify(appCtx, times(2)).publishEvent(events.capture());
+        assertTrue(events.getAllValues().get(0).isActive());
+        assertEquals(1000, events.getAllValues().get(0).getLag());
+        assertFalse(events.getAllValues().get(1).isActive());
+    }
+
+    @Test
+    void commit_coalescesAcksWhileCatchingUp() {
+        for (long offset = 0; offset < 3; offset++) {
+            Message<?> msg = consumed(offset);
+            KafkaUtil.getMessagePayloadAsString(msg);
+            KafkaUtil.commit(msg);
+        }
+        verify(acknowledgment, times(3)).acknowledge();
+
+        catchUpMode.update(5000);
+        Mockito.clearInvocations(acknowledgment);
+        for (long offset = 3; offset < 13; offset++) {
+            Message<?> msg = consumed(offset);
+            KafkaUtil.getMessagePayloadAsString(msg);
+            KafkaUtil.commit(msg);
+        }
+        verify(acknowledgment, times(2)).acknowledge();
+    }
+
+    @Test
+    void commit_flushesDeferredAckOfIdlePartitionOnConsumerThread() {
+        catchUpMode.update(5000);
+        for (long offset = 0; offset < 7; offset++) {
+            Message<?> msg = consumed(offset);
+            KafkaUtil.getMessagePayloadAsString(msg);
+            KafkaUtil.commit(msg);
+        }
+        verify(acknowledgment, times(1)).acknowledge();
+
+        KafkaLagSampler lagSampler = new KafkaLagSampler();
+        Map<TopicPartition, Long> endOffsets = Map.of(new TopicPartition("catchup_topic", 0), 7L);
+        lagSampler.sample(endOffsets, System.currentTimeMillis());
+        // a sample interval without a commit on the partition, the sampler thread never acks
+        lagSampler.sample(endOffsets, System.currentTimeMillis() + 1000L);
+        verify(acknowledgment, times(1)).acknowledge();
+
+        // the next commit on the consumer thread, here of another partition, flushes it
+        Acknowledgment other = mock(Acknowledgment.class);
+        Message<?> msg = MessageBuilder.fromMessage(consumed(0))
+                .setHeader(KafkaHeaders.RECEIVED_PARTITION, 1)
+                .setHeader(KafkaHeaders.ACKNOWLEDGMENT, other).build();
+        KafkaUtil.getMessagePayloadAsString(msg);
+        KafkaUtil.commit(msg);
+        verify(acknowledgment, times(2)).acknowledge();
+        catchUpMode.onIdle(null);
+        verify(acknowledgment, times(2)).acknowledge();
+    }
+
+    @Test
+    void idleEvent_flushesDeferredAcksOnceCatchUpEnds() {
+        catchUpMode.update(5000);
+        for (long offset = 0; offset < 3; offset++) {
+            Message<?> msg = consumed(offset);
+            KafkaUtil.getMessagePayloadAsString(msg);
+            KafkaUtil.commit(msg);
+        }
+        verify(acknowledgment, never()).acknowledge();
+        catchUpMode.onIdle(null);
+        verify(acknowledgment, never()).acknowledge();
+
+        catchUpMode.update(0);
+        catchUpMode.onIdle(null);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+}
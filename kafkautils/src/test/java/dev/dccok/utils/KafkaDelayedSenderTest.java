@@ -0,0 +1,162 @@
+package dev.dccok.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class KafkaDelayedSenderTest {
+
+    @Mock
+    KafkaUtil kafkaUtil;
+
+    @Mock
+    ObjectProvider<KafkaUtil> kafkaUtilProvider;
+
+    @InjectMocks
+    KafkaDelayedSender delayedSender;
+
+    @TempDir
+    Path storeDir;
+
+    private ConfigurableEnvironment env;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        KafkaUtil.setStandardMapper();
+        when(kafkaUtilProvider.getObject()).thenReturn(kafkaUtil);
+        ApplicationContext appCtx = mock(ApplicationContext.class);
+        env = mock(ConfigurableEnvironment.class);
+        when(appCtx.getEnvironment()).thenReturn(env);
+        when(env.getProperty("kafkautil.delay.store-dir")).thenReturn(storeDir.toString());
+        when(env.getProperty("kafkautil.delay.binding")).thenReturn("kafkaDelay-out-0");
+        delayedSender.setApplicationContext(appCtx);
+    }
+
+    @AfterEach
+    void teardown() {
+        delayedSender.close();
+    }
+
+    private long storedCount() throws IOException {
+        try (Stream<Path> files = Files.list(storeDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void sendAfter_shortDelayPersistedThenSent() throws Exception {
+        when(kafkaUtil.send(eq("worker-out-0"), any(Message.class))).thenReturn(true);
+        WorkerMessage payload = new WorkerMessage();
+
+        assertTrue(delayedSender.sendAfter("worker-out-0",
+                MessageBuilder.withPayload(payload).setHeader("key1", "value1").build(), Duration.ofMillis(200)));
+        assertEquals(1, storedCount());
+
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(kafkaUtil, timeout(3000)).send(eq("worker-out-0"), sent.capture());
+        assertEquals("value1", KafkaUtil.getHeaderValue(sent.getValue(), "key1"));
+        assertEquals(payload.getId(), KafkaUtil.convertPayload(sent.getValue(), WorkerMessage.class).getId());
+        Thread.sleep(100);
+        assertEquals(0, storedCount());
+    }
+
+    @Test
+    void sendAfter_longDelayParkedOnDelayTopic() {
+        when(kafkaUtil.send(eq("kafkaDelay-out-0"), any(Message.class))).thenReturn(true);
+
+        delayedSender.sendAfter("worker-out-0", MessageBuilder.withPayload("{}").build(), Duration.ofMinutes(15));
+
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(kafkaUtil).send(eq("kafkaDelay-out-0"), sent.capture());
+        assertEquals("worker-out-0", KafkaUtil.getHeaderValue(sent.getValue(), KafkaDelayedSender.TARGET_BINDING));
+        assertEquals(0, delayedSender.getPendingCount());
+    }
+
+    @Test
+    void sendAfter_longDelayParkedOnCoveringBucket() {
+        when(env.getProperty("kafkautil.delay.buckets")).thenReturn("600000:kafkaDelay10m-out-0, 3600000:kafkaDelay1h-out-0");
+        ApplicationContext appCtx = mock(ApplicationContext.class);
+        when(appCtx.getEnvironment()).thenReturn(env);
+        delayedSender.setApplicationContext(appCtx);
+        when(kafkaUtil.send(any(), any(Message.class))).thenReturn(true);
+
+        delayedSender.sendAfter("worker-out-0", MessageBuilder.withPayload("{}").build(), Duration.ofMinutes(5));
+        delayedSender.sendAfter("worker-out-0", MessageBuilder.withPayload("{}").build(), Duration.ofMinutes(15));
+        delayedSender.sendAfter("worker-out-0", MessageBuilder.withPayload("{}").build(), Duration.ofHours(2));
+
+        verify(kafkaUtil).send(eq("kafkaDelay10m-out-0"), any(Message.class));
+        verify(kafkaUtil).send(eq("kafkaDelay1h-out-0"), any(Message.class));
+        verify(kafkaUtil).send(eq("kafkaDelay-out-0"), any(Message.class));
+        assertEquals(0, delayedSender.getPendingCount());
+    }
+
+    @Test
+    void delayChannel_nacksUntilDue() throws IOException {
+        Acknowledgment ack = mock(Acknowledgment.class);
+        Message<?> parked = MessageBuilder.withPayload("{}".getBytes())
+                .setHeader(KafkaDelayedSender.TARGET_BINDING, "worker-out-0")
+                .setHeader(KafkaDelayedSender.DELIVER_AT, String.valueOf(System.currentTimeMillis() + 3600000L).getBytes())
+                .setHeader(KafkaHeaders.ACKNOWLEDGMENT, ack).build();
+
+        delayedSender.kafkaDelayChannel().accept(parked);
+        verify(ack).nack(any(Duration.class));
+        verify(ack, never()).acknowledge();
+
+        Message<?> due = MessageBuilder.fromMessage(parked)
+                .setHeader(KafkaDelayedSender.DELIVER_AT, String.valueOf(System.currentTimeMillis() + 30000L)).build();
+        delayedSender.kafkaDelayChannel().accept(due);
+        verify(ack).acknowledge();
+        assertEquals(1, storedCount());
+    }
+
+    @Test
+    void restorePending_resendsStoredMessages() throws IOException {
+        when(kafkaUtil.send(eq("worker-out-0"), any(Message.class))).thenReturn(true);
+        delayedSender.sendAfter("worker-out-0", MessageBuilder.withPayload("{}").build(), Duration.ofSeconds(30));
+        delayedSender.close();
+
+        KafkaDelayedSender restarted = new KafkaDelayedSender();
+        ApplicationContext appCtx = mock(ApplicationContext.class);
+        when(appCtx.getEnvironment()).thenReturn(env);
+        restarted.setApplicationContext(appCtx);
+        restarted.restorePending();
+
+        assertEquals(1, restarted.getPendingCount());
+        assertEquals(1, storedCount());
+        restarted.close();
+    }
+
+    @Test
+    void restorePending_skipsMessagesScheduledInThisJvm() throws IOException {
+        delayedSender.sendAfter("worker-out-0", MessageBuilder.withPayload("{}").build(), Duration.ofSeconds(30));
+
+        delayedSender.restorePending();
+
+        assertEquals(1, delayedSender.getPendingCount());
+        assertEquals(1, storedCount());
+    }
+}
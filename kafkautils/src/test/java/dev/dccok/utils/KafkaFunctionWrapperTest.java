@@ -0,0 +1,97 @@
+package dev.dccok.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.function.context.catalog.SimpleFunctionRegistry.FunctionInvocationWrapper;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KafkaFunctionWrapperTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private StreamBridge streamBridge;
+    private KafkaUtil util;
+
+    @BeforeEach
+    void setup() {
+        KafkaUtil.setStandardMapper();
+        util = new KafkaUtil();
+        streamBridge = Mockito.mock(StreamBridge.class);
+        Mockito.when(streamBridge.send(ArgumentMatchers.anyString(), ArgumentMatchers.any())).thenReturn(true);
+        ReflectionTestUtils.setField(util, "streamBridge", streamBridge);
+        KafkaUtil.clearProcessedMsgs4Test(util);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static KafkaFunctionWrapper wrapper() {
+        ObjectProvider<io.micrometer.observation.ObservationRegistry> none = Mockito.mock(ObjectProvider.class);
+        return new KafkaFunctionWrapper(none);
+    }
+
+    @Test
+    void retriedDelivery_dropsSendsOfFailedAttempt() throws JsonProcessingException {
+        WorkerMessage workerMessage = new WorkerMessage();
+        workerMessage.setId(UUID.randomUUID());
+        Message msg = MessageBuilder.withPayload(mapper.writeValueAsString(workerMessage))
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "retry_topic").build();
+        AtomicInteger attempts = new AtomicInteger();
+        FunctionInvocationWrapper function = Mockito.mock(FunctionInvocationWrapper.class);
+        Mockito.when(function.apply(msg)).thenAnswer(call -> {
+            KafkaUtil.getMessagePayloadAsObject(msg, WorkerMessage.class);
+            util.sendAtCommit("audit-out-0", MessageBuilder.withPayload(workerMessage).build());
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("first attempt fails");
+            }
+            KafkaUtil.commit(msg);
+            return null;
+        });
+        KafkaFunctionWrapper wrapper = wrapper();
+
+        // the binder's RetryTemplate hands the same Message instance to the function again
+        assertThrows(IllegalStateException.class, () -> wrapper.doApply(msg, function));
+        assertEquals(0, KafkaUtil.getInFlightCount("retry_topic"));
+        wrapper.doApply(msg, function);
+
+        Mockito.verify(streamBridge, Mockito.times(1)).send(ArgumentMatchers.eq("audit-out-0"), ArgumentMatchers.any(Message.class));
+        assertEquals(0, KafkaUtil.getInFlightCount("retry_topic"));
+    }
+
+    @Test
+    void outboundMessage_passedThrough() {
+        Message<String> outbound = MessageBuilder.withPayload("out").build();
+        FunctionInvocationWrapper function = Mockito.mock(FunctionInvocationWrapper.class);
+        Mockito.when(function.apply(outbound)).thenReturn("sent");
+
+        assertEquals("sent", wrapper().doApply(outbound, function));
+    }
+
+    @Test
+    void expiredRecord_droppedBeforeFunction() throws JsonProcessingException {
+        Acknowledgment ack = Mockito.mock(Acknowledgment.class);
+        KafkaUtil.putTopicTtl("ttl_topic,other_topic", 1000L);
+        Message msg = MessageBuilder.withPayload(mapper.writeValueAsString(new WorkerMessage()))
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "other_topic")
+                .setHeader(KafkaHeaders.RECEIVED_TIMESTAMP, System.currentTimeMillis() - 5000L)
+                .setHeader(KafkaHeaders.ACKNOWLEDGMENT, ack).build();
+        FunctionInvocationWrapper function = Mockito.mock(FunctionInvocationWrapper.class);
+
+        assertNull(wrapper().doApply(msg, function));
+        Mockito.verify(function, Mockito.never()).apply(ArgumentMatchers.any());
+        Mockito.verify(ack).acknowledge();
+        assertEquals(1L, KafkaUtil.getExpiredCount("other_topic"));
+    }
+}
@@ -0,0 +1,121 @@
+package dev.dccok.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+class KafkaLagSamplerTest {
+
+    private static final TopicPartition TP = new TopicPartition("lag_topic", 0);
+
+    @Mock
+    ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    @InjectMocks
+    KafkaLagSampler lagSampler;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.openMocks(this);
+        KafkaLagSampler.clearPartitions4Test();
+        when(meterRegistryProvider.getIfAvailable()).thenReturn(registry);
+    }
+
+    private Message<?> consumed(long offset, long producedAt) {
+        return MessageBuilder.withPayload("{}")
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "lag_topic")
+                .setHeader(KafkaHeaders.GROUP_ID, "lag_group")
+                .setHeader(KafkaHeaders.RECEIVED_PARTITION, 0)
+                .setHeader(KafkaHeaders.OFFSET, offset)
+                .setHeader(KafkaHeaders.RECEIVED_TIMESTAMP, producedAt).build();
+    }
+
+    @Test
+    void sample_lagAndCatchUp() {
+        long now = System.currentTimeMillis();
+        for (long off = 0; off < 100; off++) {
+            KafkaLagSampler.record(consumed(off, now - 60000L));
+        }
+        lagSampler.sample(Map.of(TP, 1100L), now);
+
+        assertEquals(1000L, KafkaLagSampler.getTopicLag("lag_topic"));
+        assertEquals(1000.0, registry.get("kafkautil.consumer.lag").gauge().value());
+        assertEquals(60000.0, registry.get("kafkautil.consumer.lag.time").gauge().value());
+        assertEquals(-1.0, registry.get("kafkautil.consumer.catchup").gauge().value());
+
+        // 10s later: 300 more consumed while 100 more were produced, 800 behind at 20/s net
+        for (long off = 100; off < 400; off++) {
+            KafkaLagSampler.record(consumed(off, now - 30000L));
+        }
+        lagSampler.sample(Map.of(TP, 1200L), now + 10000L);
+
+        assertEquals(800L, KafkaLagSampler.getTopicLag("lag_topic"));
+        assertEquals(40.0, registry.get("kafkautil.consumer.catchup").gauge().value());
+    }
+
+    @Test
+    void sample_caughtUp() {
+        long now = System.currentTimeMillis();
+        KafkaLagSampler.record(consumed(9L, now - 60000L));
+        lagSampler.sample(Map.of(TP, 10L), now);
+
+        assertEquals(0L, KafkaLagSampler.getTopicLag("lag_topic"));
+        assertEquals(0.0, registry.get("kafkautil.consumer.lag.time").gauge().value());
+        assertEquals(-1L, KafkaLagSampler.getTopicLag("other_topic"));
+    }
+
+    @Test
+    void sample_evictsRevokedPartition() {
+        long now = System.currentTimeMillis();
+        KafkaLagSampler.record(consumed(9L, now - 60000L));
+        // first sample and 9 without a committed record
+        for (int i = 0; i < 10; i++) {
+            lagSampler.sample(Map.of(TP, 100L + i), now + i * 1000L);
+        }
+        assertEquals(99L, KafkaLagSampler.getTopicLag("lag_topic"));
+        assertEquals(1, registry.find("kafkautil.consumer.lag").gauges().size());
+
+        lagSampler.sample(Map.of(TP, 110L), now + 10000L);
+        assertEquals(-1L, KafkaLagSampler.getTopicLag("lag_topic"));
+        assertEquals(0, registry.find("kafkautil.consumer.lag").gauges().size());
+
+        KafkaLagSampler.record(consumed(110L, now));
+        lagSampler.sample(Map.of(TP, 111L), now + 12000L);
+        assertEquals(0L, KafkaLagSampler.getTopicLag("lag_topic"));
+        assertEquals(1, registry.find("kafkautil.consumer.lag").gauges().size());
+    }
+
+    @Test
+    void adminConfig_carriesSecuritySettingsOfTheBindings() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("spring.kafka.security.protocol", "SASL_SSL")
+                .withProperty("spring.kafka.properties.sasl.mechanism", "PLAIN")
+                .withProperty("spring.kafka.ssl.trust-store-type", "PKCS12")
+                .withProperty("spring.cloud.stream.kafka.binder.configuration.sasl.mechanism", "SCRAM-SHA-512")
+                .withProperty("spring.cloud.stream.kafka.binder.configuration.sasl.jaas.config", "jaas");
+
+        Map<String, Object> config = KafkaLagSampler.adminConfig(env);
+
+        assertEquals("SASL_SSL", config.get("security.protocol"));
+        assertEquals("PKCS12", config.get("ssl.truststore.type"));
+        assertEquals("SCRAM-SHA-512", config.get("sasl.mechanism"));
+        assertEquals("jaas", config.get("sasl.jaas.config"));
+    }
+}
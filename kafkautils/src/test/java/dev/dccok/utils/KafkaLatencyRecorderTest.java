@@ -0,0 +1,91 @@
+package dev.dccok.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class KafkaLatencyRecorderTest {
+
+    @Mock
+    StreamBridge streamBridge;
+
+    private final KafkaUtil kafkaUtil = new KafkaUtil();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.openMocks(this);
+        when(streamBridge.send(ArgumentMatchers.anyString(), ArgumentMatchers.any())).thenReturn(true);
+        ReflectionTestUtils.setField(kafkaUtil, "streamBridge", streamBridge);
+        KafkaUtil.clearProcessedMsgs4Test(kafkaUtil);
+        KafkaLatencyRecorder.setRegistry(registry);
+    }
+
+    @AfterEach
+    void reset() {
+        KafkaLatencyRecorder.setRegistry(null);
+        KafkaLatencyRecorder.clear();
+    }
+
+    private Message<?> sent(String binding, Message<?> msg) {
+        kafkaUtil.send(binding, msg);
+        ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        verify(streamBridge, atLeastOnce()).send(eq(binding), captor.capture());
+        return captor.getValue();
+    }
+
+    private Message<?> consumed(Message<?> sent, String topic) {
+        return MessageBuilder.fromMessage(sent)
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, topic)
+                .setHeader(KafkaHeaders.RECEIVED_PARTITION, 0)
+                .setHeader(KafkaHeaders.OFFSET, 0L).build();
+    }
+
+    @Test
+    void send_stampsProduceTimeAndOrigin() {
+        Message<?> out = sent("orders-out-0", MessageBuilder.withPayload("{}").build());
+
+        assertEquals("orders", out.getHeaders().get("producerid"));
+        assertEquals(KafkaUtil.getAppName(), out.getHeaders().get(KafkaLatencyRecorder.ORIGIN_APP));
+        Long producedAt = (Long) out.getHeaders().get(KafkaLatencyRecorder.PRODUCED_AT);
+        assertNotNull(producedAt);
+        assertEquals(producedAt, out.getHeaders().get(KafkaLatencyRecorder.PIPELINE_START));
+    }
+
+    @Test
+    void consume_recordsHopAndPipelineLatency() {
+        Message<?> first = sent("orders-out-0", MessageBuilder.withPayload("{}").build());
+        KafkaUtil.getMessagePayloadAsString(consumed(first, "orders"));
+
+        Timer hop = registry.find("kafkautil.consumer.latency").tags("topic", "orders").timer();
+        assertNotNull(hop);
+        assertEquals(1, hop.count());
+        assertNull(registry.find("kafkautil.pipeline.latency").timer());
+
+        // second hop sent while handling the first, the pipeline start is carried over
+        Message<?> second = sent("shipments-out-0", MessageBuilder.withPayload("{}").build());
+        assertEquals(first.getHeaders().get(KafkaLatencyRecorder.PIPELINE_START),
+                second.getHeaders().get(KafkaLatencyRecorder.PIPELINE_START));
+        KafkaLatencyRecorder.clear();
+        KafkaUtil.getMessagePayloadAsString(consumed(second, "shipments"));
+
+        Timer pipeline = registry.find("kafkautil.pipeline.latency").tags("topic", "shipments").timer();
+        assertNotNull(pipeline);
+        assertEquals(1, pipeline.count());
+    }
+}
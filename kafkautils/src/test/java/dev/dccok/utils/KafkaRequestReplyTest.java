@@ -0,0 +1,91 @@
+package dev.dccok.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class KafkaRequestReplyTest {
+
+    @Mock
+    KafkaUtil kafkaUtil;
+
+    @InjectMocks
+    KafkaRequestReply requestReply;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        KafkaUtil.setStandardMapper();
+        ApplicationContext appCtx = mock(ApplicationContext.class);
+        ConfigurableEnvironment env = mock(ConfigurableEnvironment.class);
+        when(appCtx.getEnvironment()).thenReturn(env);
+        when(env.getProperty("spring.cloud.stream.bindings.kafkaReplyChannel-in-0.destination")).thenReturn("replies");
+        requestReply.setApplicationContext(appCtx);
+    }
+
+    @AfterEach
+    void teardown() {
+        requestReply.close();
+    }
+
+    @Test
+    void request_completedByReply() throws Exception {
+        when(kafkaUtil.send(eq("requester-out-0"), any(Message.class))).thenReturn(true);
+
+        CompletableFuture<StatusMessage> result = requestReply.request("requester-out-0",
+                MessageBuilder.withPayload("{}").build(), StatusMessage.class, Duration.ofSeconds(5));
+
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(kafkaUtil).send(eq("requester-out-0"), sent.capture());
+        assertEquals("replies", KafkaUtil.getHeaderValue(sent.getValue(), KafkaRequestReply.REPLY_TO));
+        String correlationId = KafkaUtil.getHeaderValue(sent.getValue(), KafkaRequestReply.CORRELATION_ID);
+
+        requestReply.kafkaReplyChannel().accept(MessageBuilder.withPayload("{\"statusCode\":\"OK\"}".getBytes())
+                .setHeader(KafkaRequestReply.CORRELATION_ID, correlationId.getBytes()).build());
+
+        assertEquals("OK", result.get(1, TimeUnit.SECONDS).getStatusCode());
+        assertEquals(0, requestReply.getPendingCount());
+    }
+
+    @Test
+    void request_timesOut() {
+        when(kafkaUtil.send(any(), any(Message.class))).thenReturn(true);
+
+        CompletableFuture<Message<?>> result = requestReply.request("requester-out-0",
+                MessageBuilder.withPayload("{}").build(), Duration.ofMillis(50));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(2, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertEquals(0, requestReply.getPendingCount());
+    }
+
+    @Test
+    void request_sendFails() {
+        when(kafkaUtil.send(any(), any(Message.class))).thenReturn(false);
+
+        CompletableFuture<Message<?>> result = requestReply.request("requester-out-0",
+                MessageBuilder.withPayload("{}").build(), Duration.ofSeconds(5));
+
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(0, requestReply.getPendingCount());
+    }
+}
@@ -8,15 +8,25 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.slf4j.LoggerFactory;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -106,6 +116,177 @@ class KafkaUtilTest {
         assertTrue(headers.startsWith("topic/group"));
     }
 
+    @Test
+    void skipIfExpired_topicTtl() throws JsonProcessingException {
+        Acknowledgment ack = Mockito.mock(Acknowledgment.class);
+        KafkaUtil.putTopicTtl("other_topic, ttl_topic", 1000L);
+        Message old = MessageBuilder.withPayload(mapper.writeValueAsString(genWorkerMessage()))
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "ttl_topic")
+                .setHeader(KafkaHeaders.RECEIVED_TIMESTAMP, System.currentTimeMillis() - 5000L)
+                .setHeader(KafkaHeaders.ACKNOWLEDGMENT, ack).build();
+        Message recent = MessageBuilder.fromMessage(old)
+                .setHeader(KafkaHeaders.RECEIVED_TIMESTAMP, System.currentTimeMillis()).build();
+
+        assertTrue(KafkaUtil.skipIfExpired(old));
+        assertFalse(KafkaUtil.skipIfExpired(recent));
+        Mockito.verify(ack, Mockito.times(1)).acknowledge();
+        assertEquals(1L, KafkaUtil.getExpiredCount("ttl_topic"));
+    }
+
+    @Test
+    void skipIfExpired_producerExpiry() throws JsonProcessingException {
+        Message expired = MessageBuilder.withPayload(mapper.writeValueAsString(genWorkerMessage()))
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "any_topic")
+                .setHeader(KafkaUtil.EXPIRES_AT, String.valueOf(System.currentTimeMillis() - 1).getBytes()).build();
+        Message live = MessageBuilder.fromMessage(expired)
+                .setHeader(KafkaUtil.EXPIRES_AT, System.currentTimeMillis() + 60000L).build();
+
+        assertTrue(KafkaUtil.skipIfExpired(expired));
+        assertFalse(KafkaUtil.skipIfExpired(live));
+        assertEquals(1L, KafkaUtil.getExpiredCount("any_topic"));
+    }
+
+    @Test
+    void isDupMessage_skippedInTransactionalMode() throws JsonProcessingException {
+        Message msg = MessageBuilder.withPayload(mapper.writeValueAsString(genWorkerMessage()))
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "orders")
+                .setHeader(KafkaHeaders.GROUP_ID, "group")
+                .setHeader(KafkaHeaders.RECEIVED_PARTITION, 3)
+                .setHeader(KafkaHeaders.OFFSET, 42L).build();
+        KafkaUtil.getMessagePayloadAsObject(msg, WorkerMessage.class);
+        KafkaUtil.commit(msg);
+        assertTrue(KafkaUtil.isDupMessage(msg));
+
+        KafkaUtil.setTransactional4Test(true);
+        try {
+            assertFalse(KafkaUtil.isDupMessage(msg));
+        } finally {
+            KafkaUtil.setTransactional4Test(false);
+        }
+    }
+
+    @Test
+    void multicast_encodesPayloadOnce() {
+        KafkaUtil.setStandardMapper();
+        KafkaUtil util = new KafkaUtil();
+        StreamBridge streamBridge = Mockito.mock(StreamBridge.class);
+        Mockito.when(streamBridge.send(ArgumentMatchers.anyString(), ArgumentMatchers.any())).thenReturn(true);
+        ReflectionTestUtils.setField(util, "streamBridge", streamBridge);
+        WorkerMessage workerMessage = genWorkerMessage();
+
+        assertTrue(util.multicast(MessageBuilder.withPayload(workerMessage).build(), "audit-out-0", "billing-out-0"));
+
+        ArgumentCaptor<Message> audit = ArgumentCaptor.forClass(Message.class);
+        ArgumentCaptor<Message> billing = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(streamBridge).send(ArgumentMatchers.eq("audit-out-0"), audit.capture());
+        Mockito.verify(streamBridge).send(ArgumentMatchers.eq("billing-out-0"), billing.capture());
+        assertSame(audit.getValue().getPayload(), billing.getValue().getPayload());
+        assertEquals("audit", audit.getValue().getHeaders().get("producerid"));
+        assertEquals("billing", billing.getValue().getHeaders().get("producerid"));
+        assertEquals(workerMessage.getId(), KafkaUtil.fromJsonBytes((byte[]) audit.getValue().getPayload(), WorkerMessage.class).getId());
+    }
+
+    @Test
+    void multicast_bindingContentType() {
+        KafkaUtil.setStandardMapper();
+        KafkaUtil.setBindingContentType4Test("text-out-0", "text/plain");
+        KafkaUtil util = new KafkaUtil();
+        StreamBridge streamBridge = Mockito.mock(StreamBridge.class);
+        Mockito.when(streamBridge.send(ArgumentMatchers.anyString(), ArgumentMatchers.any())).thenReturn(true);
+        ReflectionTestUtils.setField(util, "streamBridge", streamBridge);
+
+        assertTrue(util.multicast(MessageBuilder.withPayload("plain text").build(), "text-out-0", "json-out-0"));
+
+        ArgumentCaptor<Message> text = ArgumentCaptor.forClass(Message.class);
+        ArgumentCaptor<Message> json = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(streamBridge).send(ArgumentMatchers.eq("text-out-0"), text.capture());
+        Mockito.verify(streamBridge).send(ArgumentMatchers.eq("json-out-0"), json.capture());
+        assertEquals("text/plain", text.getValue().getHeaders().get(MessageHeaders.CONTENT_TYPE));
+        // left to the binder default
+        assertNull(json.getValue().getHeaders().get(MessageHeaders.CONTENT_TYPE));
+        assertSame(text.getValue().getPayload(), json.getValue().getPayload());
+    }
+
+    record Route(UUID id, String type, int priority) {}
+
+    @Test
+    void getPayloadFields_stopsOnceFound() {
+        KafkaUtil.setStandardMapper();
+        // anything after the requested fields is never parsed
+        String json = "{\"id\":\"a1\",\"items\":[{\"sku\":1},{\"sku\":2}],\"meta\":{\"tenant\":\"t9\",\"tags\":[\"x\"]},\"type\":\"ORDER\", broken";
+        Message msg = MessageBuilder.withPayload(json.getBytes(StandardCharsets.UTF_8)).build();
+
+        Map<String, Object> fields = KafkaUtil.getPayloadFields(msg, "/id", "/meta/tenant", "/items/1/sku", "/type");
+
+        assertEquals(4, fields.size());
+        assertEquals("a1", fields.get("/id"));
+        assertEquals("t9", fields.get("/meta/tenant"));
+        assertEquals(2, fields.get("/items/1/sku"));
+        assertEquals("ORDER", fields.get("/type"));
+    }
+
+    @Test
+    void getPayloadProjection_record() throws JsonProcessingException {
+        KafkaUtil.setStandardMapper();
+        WorkerMessage workerMessage = genWorkerMessage();
+        String json = mapper.writeValueAsString(workerMessage).replaceFirst("\\{", "{\"type\":\"WORK\",");
+        Message msg = MessageBuilder.withPayload(json).build();
+
+        Route route = KafkaUtil.getPayloadProjection(msg, Route.class);
+
+        assertEquals(workerMessage.getId(), route.id());
+        assertEquals("WORK", route.type());
+        assertEquals(0, route.priority());
+    }
+
+    @Test
+    void getPayloadFields_afterSendAtCommit_keepsPendingSend() throws JsonProcessingException {
+        KafkaUtil.setStandardMapper();
+        KafkaUtil util = new KafkaUtil();
+        StreamBridge streamBridge = Mockito.mock(StreamBridge.class);
+        Mockito.when(streamBridge.send(ArgumentMatchers.anyString(), ArgumentMatchers.any())).thenReturn(true);
+        ReflectionTestUtils.setField(util, "streamBridge", streamBridge);
+        KafkaUtil.clearProcessedMsgs4Test(util);
+        WorkerMessage workerMessage = genWorkerMessage();
+        Message msg = MessageBuilder.withPayload(mapper.writeValueAsString(workerMessage))
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "fields_topic").build();
+
+        KafkaUtil.getMessagePayloadAsObject(msg, WorkerMessage.class);
+        util.sendAtCommit("audit-out-0", MessageBuilder.withPayload(workerMessage).build());
+        KafkaUtil.getPayloadFields(msg, "/id");
+        KafkaUtil.getMessagePayloadAsObject(msg, WorkerMessage.class);
+        assertEquals(1, KafkaUtil.getInFlightCount("fields_topic"));
+        KafkaUtil.commit(msg);
+
+        Mockito.verify(streamBridge).send(ArgumentMatchers.eq("audit-out-0"), ArgumentMatchers.any(Message.class));
+        assertEquals(0, KafkaUtil.getInFlightCount("fields_topic"));
+    }
+
+    @Test
+    void warmup_buildsCachedReaderAndWriter() {
+        KafkaUtil.setStandardMapper();
+        ApplicationContext appCtx = Mockito.mock(ApplicationContext.class);
+        ConfigurableEnvironment env = Mockito.mock(ConfigurableEnvironment.class);
+        Mockito.when(appCtx.getEnvironment()).thenReturn(env);
+        Mockito.when(env.getProperty("kafkautil.warmup.enabled")).thenReturn("true");
+        Mockito.when(env.getProperty("kafkautil.warmup.classes")).thenReturn("dev.dccok.utils.WorkerMessage, dev.dccok.utils.Missing");
+        Mockito.when(env.getProperty("kafkautil.warmup.iterations")).thenReturn("10");
+
+        KafkaWarmup warmup = new KafkaWarmup();
+        warmup.setApplicationContext(appCtx);
+        assertFalse(warmup.isWarmedUp());
+        assertFalse(KafkaUtil.isReaderCached4Test(WorkerMessage.class));
+        assertFalse(KafkaUtil.isWriterCached4Test(LogLevelAdjustmentMessage.class));
+        warmup.start();
+
+        // the first real message finds the reader and writer built
+        assertTrue(warmup.isWarmedUp());
+        assertTrue(KafkaUtil.isReaderCached4Test(WorkerMessage.class));
+        assertTrue(KafkaUtil.isWriterCached4Test(WorkerMessage.class));
+        assertTrue(KafkaUtil.isReaderCached4Test(LogLevelAdjustmentMessage.class));
+        assertTrue(KafkaUtil.isWriterCached4Test(LogLevelAdjustmentMessage.class));
+    }
+
     @Test
     void test() throws JsonProcessingException {
         Logger logger = (Logger) LoggerFactory.getLogger(KafkaUtil.class.getName());
@@ -123,4 +304,24 @@ class KafkaUtilTest {
             return true;
         }));
     }
+
+    @Test
+    void transactionalMode_optInOnly() {
+        ApplicationContext appCtx = Mockito.mock(ApplicationContext.class);
+        Mockito.when(appCtx.getBeanDefinitionNames()).thenReturn(new String[0]);
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("spring.cloud.stream.kafka.binder.transaction.transaction-id-prefix", "tx-");
+        Mockito.when(appCtx.getEnvironment()).thenReturn(env);
+        try {
+            new KafkaUtil().setApplicationContext(appCtx);
+            assertFalse(KafkaUtil.isTransactional());
+
+            env.setProperty(KafkaUtil.TRANSACTIONAL_KEY, "true");
+            new KafkaUtil().setApplicationContext(appCtx);
+            assertTrue(KafkaUtil.isTransactional());
+        } finally {
+            KafkaUtil.setTransactional4Test(false);
+            KafkaUtil.clearProcessedMsgs4Test(kafkaUtil);
+        }
+    }
 }
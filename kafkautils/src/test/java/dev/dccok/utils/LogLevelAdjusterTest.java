@@ -1,10 +1,17 @@
 package dev.dccok.utils;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.read.ListAppender;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,16 +19,27 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 // For the LogLevelAdjuster class, this file contains the LogLevelAdjusterTest class,
@@ -184,6 +202,38 @@ class LogLevelAdjusterTest {
 
     }
 
+    @Test
+    void test_logLevelAdjusterChannel_notForInstance() throws JsonProcessingException {
+
+        ApplicationContext appCtx = setupEnvBaseForTest();
+        ConfigurableEnvironment env = (ConfigurableEnvironment) appCtx.getEnvironment();
+        when(env.getProperty("info.app.name")).thenReturn("ValidApp");
+        when(env.getProperty("kafkautil.instance-id")).thenReturn("pod-1");
+        when(env.getProperty("spring.cloud.stream.bindings.logLevelAdjusterChannel-in-0.destination")).thenReturn("log_level_adjustment");
+        when(env.getProperty("spring.cloud.stream.bindings.logLevelAdjusterChannel-in-0.group")).thenReturn("log_level_adjustment_ValidApp");
+        logLevelAdjuster.setApplicationContext(appCtx);
+        DiagnosticCommands diagnostics = mock(DiagnosticCommands.class);
+        ReflectionTestUtils.setField(logLevelAdjuster, "diagnostics", diagnostics);
+
+        logLevelAdjuster.enableLogLevelAdjustment();
+
+        LogLevelAdjustmentMessage message = new LogLevelAdjustmentMessage("ValidApp", null, null);
+        message.setCommand(DiagnosticCommands.THREAD_DUMP);
+        message.setInstanceId("pod-2");
+        ObjectMapper mapper = new ObjectMapper();
+        logLevelAdjuster.logLevelCommandChannel().accept(MessageBuilder.withPayload(mapper.writeValueAsString(message)).build());
+        assertTrue(logContains("Logger not changed, not for this instance"));
+
+        message.setInstanceId("pod-1");
+        logLevelAdjuster.logLevelAdjusterChannel().accept(MessageBuilder.withPayload(mapper.writeValueAsString(message)).build());
+        assertTrue(logContains("Ignoring instance targeted message or command on the shared channel"));
+        verify(diagnostics, never()).submit(any());
+
+        logLevelAdjuster.logLevelCommandChannel().accept(MessageBuilder.withPayload(mapper.writeValueAsString(message))
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "log_level_command").build());
+        verify(diagnostics).submit(message);
+    }
+
     @Test
     void test_logLevelAdjusterChannel_loggerNotFound() throws JsonProcessingException {
 
@@ -204,4 +254,192 @@ class LogLevelAdjusterTest {
         assertTrue(logContains("Logger junk Not Found Make Sure that logger name is correct"));
 
     }
+
+    @Test
+    void test_adjustment_ttlRestoresPreviousLevel() throws InterruptedException {
+        Logger target = (Logger) LoggerFactory.getLogger("dev.dccok.ttl");
+        target.setLevel(Level.WARN);
+
+        logLevelAdjuster.LogLevelAdjustmentMessage(new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.ttl", "DEBUG", 200L, null, null, null));
+        assertEquals(Level.DEBUG, target.getLevel());
+        logLevelAdjuster.LogLevelAdjustmentMessage(new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.ttl", "TRACE", 200L, null, null, null));
+        assertEquals(Level.TRACE, target.getLevel());
+
+        Thread.sleep(600);
+        assertEquals(Level.WARN, target.getLevel());
+        assertTrue(logContains("Restored logger: dev.dccok.ttl to level WARN"));
+        logLevelAdjuster.close();
+    }
+
+    @Test
+    void test_adjustment_ttlRestoresChildLevels() throws InterruptedException {
+        Logger prefix = (Logger) LoggerFactory.getLogger("dev.dccok.ttltree");
+        Logger child = (Logger) LoggerFactory.getLogger("dev.dccok.ttltree.a.Child");
+        child.setLevel(Level.ERROR);
+
+        logLevelAdjuster.LogLevelAdjustmentMessage(new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.ttltree.*", "DEBUG", 200L, null, null, null));
+        assertNull(child.getLevel());
+        assertEquals(Level.DEBUG, child.getEffectiveLevel());
+
+        Thread.sleep(600);
+        assertNull(prefix.getLevel());
+        assertEquals(Level.ERROR, child.getLevel());
+        logLevelAdjuster.close();
+    }
+
+    @Test
+    void test_adjustment_mdcScopedList() {
+        Logger a = (Logger) LoggerFactory.getLogger("dev.dccok.mdclist.a");
+        Logger b = (Logger) LoggerFactory.getLogger("dev.dccok.mdclist.b");
+
+        logLevelAdjuster.LogLevelAdjustmentMessage(
+                new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.mdclist.a, dev.dccok.mdclist.b", "DEBUG", null, Map.of("username", "jdoe"), null, null));
+
+        MdcLevelTurboFilter filter = (MdcLevelTurboFilter) ((LoggerContext) LoggerFactory.getILoggerFactory()).getTurboFilterList()
+                .stream().filter(MdcLevelTurboFilter.class::isInstance).findFirst().orElseThrow();
+        assertEquals(List.of(a.getName(), b.getName()), filter.getOverrides().stream()
+                .map(MdcLevelTurboFilter.MdcOverride::loggerName).filter(name -> name.startsWith("dev.dccok.mdclist")).toList());
+        logLevelAdjuster.LogLevelAdjustmentMessage(
+                new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.mdclist.a, dev.dccok.mdclist.b", "OFF", null, Map.of("username", "jdoe"), null, null));
+    }
+
+    @Test
+    void test_adjustment_mdcScoped() {
+        Logger target = (Logger) LoggerFactory.getLogger("dev.dccok.mdc.Service");
+        target.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> targetAppender = new ListAppender<>();
+        targetAppender.start();
+        target.addAppender(targetAppender);
+
+        logLevelAdjuster.LogLevelAdjustmentMessage(
+                new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.mdc", "DEBUG", null, Map.of("username", "jdoe"), null, null));
+        assertEquals(Level.INFO, target.getLevel());
+
+        target.debug("not traced");
+        MDC.put("username", "jdoe");
+        try {
+            target.debug("traced");
+        } finally {
+            MDC.remove("username");
+        }
+        logLevelAdjuster.LogLevelAdjustmentMessage(
+                new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.mdc", "OFF", null, Map.of("username", "jdoe"), null, null));
+        MDC.put("username", "jdoe");
+        try {
+            target.debug("after removal");
+        } finally {
+            MDC.remove("username");
+        }
+
+        assertEquals(1, targetAppender.list.size());
+        assertEquals("traced", targetAppender.list.get(0).getFormattedMessage());
+        target.detachAppender(targetAppender);
+    }
+
+    @Test
+    void test_adjustment_sampling() {
+        Logger target = (Logger) LoggerFactory.getLogger("dev.dccok.sampled.Hot");
+        target.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> targetAppender = new ListAppender<>();
+        targetAppender.start();
+        target.addAppender(targetAppender);
+
+        logLevelAdjuster.LogLevelAdjustmentMessage(
+                new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.sampled", "INFO", null, null, 10, null));
+        for (int i = 0; i < 100; i++) {
+            target.info("event {}", i);
+            target.debug("dropped by level, not counted");
+        }
+        target.warn("above the sampled level");
+        assertEquals(11, targetAppender.list.size());
+        assertEquals("event 0", targetAppender.list.get(0).getFormattedMessage());
+        assertEquals("event 10", targetAppender.list.get(1).getFormattedMessage());
+
+        targetAppender.list.clear();
+        logLevelAdjuster.LogLevelAdjustmentMessage(
+                new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.sampled", "INFO", null, null, null, 5));
+        for (int i = 0; i < 100; i++) {
+            target.info("event {}", i);
+        }
+        // a second boundary may fall inside the loop
+        assertTrue(targetAppender.list.size() >= 5 && targetAppender.list.size() <= 10);
+
+        targetAppender.list.clear();
+        logLevelAdjuster.LogLevelAdjustmentMessage(
+                new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.sampled", "INFO", null, null, 1, null));
+        for (int i = 0; i < 100; i++) {
+            target.info("event {}", i);
+        }
+        assertEquals(100, targetAppender.list.size());
+        target.detachAppender(targetAppender);
+    }
+
+    @Test
+    void test_adjustment_wildcardsAndLists() {
+        Logger child = (Logger) LoggerFactory.getLogger("dev.dccok.wild.a.Child");
+        child.setLevel(Level.ERROR);
+        Logger kafkaUtil = (Logger) LoggerFactory.getLogger("dev.dccok.glob.KafkaUtil");
+
+        logLevelAdjuster.LogLevelAdjustmentMessage(
+                new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.wild.*, *.glob.KafkaUtil", "DEBUG"));
+
+        assertEquals(Level.DEBUG, ((Logger) LoggerFactory.getLogger("dev.dccok.wild")).getLevel());
+        assertNull(child.getLevel());
+        assertEquals(Level.DEBUG, child.getEffectiveLevel());
+        assertEquals(Level.DEBUG, ((Logger) LoggerFactory.getLogger("dev.dccok.wild.b.NotYetCreated")).getEffectiveLevel());
+        assertEquals(Level.DEBUG, kafkaUtil.getLevel());
+
+        // one unknown logger, nothing changes
+        logLevelAdjuster.LogLevelAdjustmentMessage(
+                new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.glob.KafkaUtil, junk", "WARN"));
+        assertEquals(Level.DEBUG, kafkaUtil.getLevel());
+        assertTrue(logContains("Logger junk Not Found"));
+    }
+
+    @Test
+    void test_stateLoader_appliesCompactedState() {
+        ApplicationContext appCtx = setupEnvBaseForTest();
+        ConfigurableEnvironment env = (ConfigurableEnvironment) appCtx.getEnvironment();
+        when(env.getProperty("info.app.name")).thenReturn("ValidApp");
+        logLevelAdjuster.setApplicationContext(appCtx);
+
+        String topic = "log_level_state";
+        TopicPartition tp = new TopicPartition(topic, 0);
+        MockConsumer<String, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.updatePartitions(topic, List.of(new PartitionInfo(topic, 0, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(tp, 0L));
+        consumer.updateEndOffsets(Map.of(tp, 3L));
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>(topic, 0, 0L, "ValidApp/dev.dccok.state.Svc",
+                    "{\"applicationName\":\"ValidApp\",\"loggerName\":\"dev.dccok.state.Svc\",\"logLevel\":\"TRACE\"}".getBytes()));
+            consumer.addRecord(new ConsumerRecord<>(topic, 0, 1L, "ValidApp/dev.dccok.state.*",
+                    "{\"applicationName\":\"ValidApp\",\"loggerName\":\"dev.dccok.state.*\",\"logLevel\":\"WARN\"}".getBytes()));
+            consumer.addRecord(new ConsumerRecord<>(topic, 0, 2L, "OtherApp/dev.dccok.state.*",
+                    "{\"applicationName\":\"OtherApp\",\"loggerName\":\"dev.dccok.state.*\",\"logLevel\":\"ERROR\"}".getBytes()));
+        });
+        Logger svc = (Logger) LoggerFactory.getLogger("dev.dccok.state.Svc");
+
+        LogLevelStateLoader loader = new LogLevelStateLoader();
+        ObjectProvider<LogLevelAdjuster> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(logLevelAdjuster);
+        ReflectionTestUtils.setField(loader, "logLevelAdjuster", provider);
+        loader.load(new CompactedTopicView(topic, consumer, null));
+
+        assertEquals(Level.WARN, ((Logger) LoggerFactory.getLogger("dev.dccok.state")).getLevel());
+        assertEquals(Level.TRACE, svc.getLevel());
+    }
+
+    @Test
+    void test_applyState_createsLoggersNotYetCreated() {
+        ApplicationContext appCtx = setupEnvBaseForTest();
+        ConfigurableEnvironment env = (ConfigurableEnvironment) appCtx.getEnvironment();
+        when(env.getProperty("info.app.name")).thenReturn("ValidApp");
+        logLevelAdjuster.setApplicationContext(appCtx);
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        assertNull(loggerContext.exists("dev.dccok.replay.Later"));
+
+        logLevelAdjuster.applyState(new LogLevelAdjustmentMessage("ValidApp", "dev.dccok.replay.Later", "TRACE"));
+
+        assertEquals(Level.TRACE, ((Logger) LoggerFactory.getLogger("dev.dccok.replay.Later")).getLevel());
+    }
 }
@@ -0,0 +1,84 @@
+package dev.dccok.utils;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+class LoggerCostMeterTest {
+
+    @Mock
+    ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    @InjectMocks
+    LoggerCostMeter costMeter;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(meterRegistryProvider.getIfAvailable()).thenReturn(registry);
+        costMeter.start((LoggerContext) LoggerFactory.getILoggerFactory());
+    }
+
+    @AfterEach
+    void teardown() {
+        costMeter.close();
+    }
+
+    @Test
+    void countsEventsAndBytesPerLoggerAndLevel() {
+        Logger noisy = (Logger) LoggerFactory.getLogger("dev.dccok.cost.Noisy");
+        Logger quiet = (Logger) LoggerFactory.getLogger("dev.dccok.cost.Quiet");
+        noisy.setLevel(Level.DEBUG);
+        quiet.setLevel(Level.INFO);
+        for (int i = 0; i < 500; i++) {
+            noisy.debug("a fairly long debug line for record {}", i);
+        }
+        quiet.info("one line");
+        quiet.debug("below the level, not counted");
+        quiet.error("failed", new IllegalStateException("boom"));
+
+        List<LoggerCostMeter.CostEntry> top = costMeter.top(2);
+        assertEquals("dev.dccok.cost.Noisy", top.get(0).logger());
+        assertEquals(Level.DEBUG, top.get(0).level());
+        assertEquals(500, top.get(0).events());
+        assertEquals("dev.dccok.cost.Quiet", top.get(1).logger());
+        assertEquals(Level.ERROR, top.get(1).level());
+        assertEquals(2, costMeter.top(100).stream().filter(e -> e.logger().equals("dev.dccok.cost.Quiet")).count());
+
+        // both loggers are metered under their package
+        assertEquals(500.0, registry.get("kafkautil.log.events").tag("logger", "dev.dccok.cost").tag("level", "DEBUG")
+                .functionCounter().count());
+        assertEquals((double) top.get(0).bytes(), registry.get("kafkautil.log.bytes").tag("logger", "dev.dccok.cost")
+                .tag("level", "DEBUG").functionCounter().count());
+        assertEquals(1.0, registry.get("kafkautil.log.events").tag("logger", "dev.dccok.cost").tag("level", "INFO")
+                .functionCounter().count());
+        assertTrue(registry.find("kafkautil.log.events").tag("logger", "dev.dccok.cost.Noisy").meters().isEmpty());
+        assertTrue(costMeter.report(1).contains("dev.dccok.cost.Noisy"));
+    }
+
+    @Test
+    void tagName_cutToDepth() {
+        assertEquals("com.capturerx.orders", LoggerCostMeter.tagName("com.capturerx.orders.service.OrderService", 3));
+        assertEquals("com.capturerx", LoggerCostMeter.tagName("com.capturerx", 3));
+        assertEquals("ROOT", LoggerCostMeter.tagName("ROOT", 3));
+        assertEquals("com", LoggerCostMeter.tagName("com.capturerx.orders", 1));
+    }
+}
@@ -0,0 +1,111 @@
+package dev.dccok.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.stream.binding.BindingsLifecycleController;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PriorityLaneSchedulerTest {
+
+    @Mock
+    KafkaUtil kafkaUtil;
+
+    @Mock
+    BindingsLifecycleController controller;
+
+    @Mock
+    ObjectProvider<BindingsLifecycleController> controllerProvider;
+
+    @InjectMocks
+    PriorityLaneScheduler scheduler;
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.openMocks(this);
+        KafkaUtil.clearProcessedMsgs4Test(kafkaUtil);
+        KafkaUtil.setStandardMapper();
+        KafkaLagSampler.clearPartitions4Test();
+        when(controllerProvider.getObject()).thenReturn(controller);
+        ApplicationContext appCtx = mock(ApplicationContext.class);
+        ConfigurableEnvironment env = mock(ConfigurableEnvironment.class);
+        when(appCtx.getEnvironment()).thenReturn(env);
+        when(env.getProperty("kafkautil.priority.high-bindings")).thenReturn("urgentChannel-in-0");
+        when(env.getProperty("kafkautil.priority.low-bindings")).thenReturn("bulkChannel-in-0");
+        when(env.getProperty("spring.cloud.stream.bindings.urgentChannel-in-0.destination")).thenReturn("urgent");
+        when(env.getProperty(eq("kafkautil.priority.lag-threshold"), eq(Long.class), any())).thenReturn(0L);
+        when(env.getProperty(eq("kafkautil.priority.check-interval-ms"), eq(Long.class), any())).thenReturn(200L);
+        when(env.getProperty(eq("kafkautil.priority.resume-delay-ms"), eq(Long.class), any())).thenReturn(1000L);
+        scheduler.setApplicationContext(appCtx);
+    }
+
+    @Test
+    void pausesLowLaneWhileUrgentInFlight() {
+        Message<?> urgent = MessageBuilder.withPayload("{}").setHeader(KafkaHeaders.RECEIVED_TOPIC, "urgent").build();
+
+        KafkaUtil.getMessagePayloadAsObject(urgent, WorkerMessage.class);
+        assertEquals(1, KafkaUtil.getInFlightCount("urgent"));
+        scheduler.check(1000L);
+        verify(controller).pause("bulkChannel-in-0");
+        assertTrue(scheduler.isLowPaused());
+
+        KafkaUtil.commit(urgent);
+        assertEquals(0, KafkaUtil.getInFlightCount("urgent"));
+        scheduler.check(2000L);
+        scheduler.check(2500L);
+        verify(controller, never()).resume(anyString());
+        scheduler.check(3000L);
+        verify(controller).resume("bulkChannel-in-0");
+        assertFalse(scheduler.isLowPaused());
+    }
+
+    @Test
+    void uncommittedRecordReleasedByNextRecord() {
+        Message<?> urgent = MessageBuilder.withPayload("{}").setHeader(KafkaHeaders.RECEIVED_TOPIC, "urgent").build();
+        Message<?> bulk = MessageBuilder.withPayload("{}").setHeader(KafkaHeaders.RECEIVED_TOPIC, "bulk").build();
+
+        KafkaUtil.getMessagePayloadAsObject(urgent, WorkerMessage.class);
+        KafkaUtil.getMessagePayloadAsObject(bulk, WorkerMessage.class);
+
+        assertEquals(0, KafkaUtil.getInFlightCount("urgent"));
+        assertEquals(1, KafkaUtil.getInFlightCount("bulk"));
+        KafkaUtil.commit(bulk);
+    }
+
+    @Test
+    void duplicateReleasesInFlight() {
+        Message<?> urgent = MessageBuilder.withPayload("{}").setHeader(KafkaHeaders.RECEIVED_TOPIC, "urgent")
+                .setHeader(KafkaHeaders.RECEIVED_PARTITION, 0).setHeader(KafkaHeaders.OFFSET, 7L).build();
+        KafkaUtil.getMessagePayloadAsObject(urgent, WorkerMessage.class);
+        KafkaUtil.commit(urgent);
+
+        KafkaUtil.getMessagePayloadAsObject(urgent, WorkerMessage.class);
+        assertEquals(1, KafkaUtil.getInFlightCount("urgent"));
+        assertTrue(KafkaUtil.isDupMessage(urgent));
+        assertEquals(0, KafkaUtil.getInFlightCount("urgent"));
+    }
+
+    @Test
+    void abandonedRecordReleasedAfterMaxProcessingTime() throws InterruptedException {
+        Message<?> urgent = MessageBuilder.withPayload("{}").setHeader(KafkaHeaders.RECEIVED_TOPIC, "urgent").build();
+        // handler thread fails and never commits
+        Thread handler = new Thread(() -> KafkaUtil.getMessagePayloadAsObject(urgent, WorkerMessage.class));
+        handler.start();
+        handler.join();
+
+        assertEquals(1, KafkaUtil.getInFlightCount("urgent"));
+        assertEquals(0, KafkaUtil.getInFlightCount("urgent", System.currentTimeMillis() + 86400000L));
+        assertEquals(0, KafkaUtil.getInFlightCount("urgent"));
+    }
+}
@@ -0,0 +1,69 @@
+package dev.dccok.utils;
+
+import org.hibernate.id.uuid.CustomVersionOneStrategy;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Inserts rows keyed by each id style into an in-memory H2 table with a UUID primary key and reports the insert
+ * rate and how many ids landed before the previous one (a B-tree insert away from the right edge of the index).
+ * Not picked up by surefire, run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=dev.dccok.utils.UuidInsertBenchmark
+ */
+public class UuidInsertBenchmark {
+
+    private static final int ROWS = 500_000;
+    private static final int BATCH = 1000;
+
+    public static void main(String[] args) throws SQLException {
+        CustomVersionOneStrategy timeStrategy = new CustomVersionOneStrategy();
+        for (int round = 0; round < 2; round++) {   // first round warms up
+            run("random", UUID::randomUUID);
+            run("time", () -> timeStrategy.generateUuid(null));
+            run("v7", UuidV7Generator::next);
+        }
+    }
+
+    private static void run(String style, Supplier<UUID> ids) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:" + style + System.nanoTime())) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("create table entity (id uuid primary key, name varchar(32))");
+            }
+            conn.setAutoCommit(false);
+            long outOfOrder = 0;
+            UUID previous = null;
+            long start = System.nanoTime();
+            try (PreparedStatement insert = conn.prepareStatement("insert into entity (id, name) values (?, ?)")) {
+                for (int i = 1; i <= ROWS; i++) {
+                    UUID id = ids.get();
+                    if (previous != null && compareUnsigned(id, previous) < 0) {
+                        outOfOrder++;
+                    }
+                    previous = id;
+                    insert.setObject(1, id);
+                    insert.setString(2, "row" + i);
+                    insert.addBatch();
+                    if (i % BATCH == 0) {
+                        insert.executeBatch();
+                        conn.commit();
+                    }
+                }
+            }
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%-6s %,d rows in %,dms (%,d rows/s), %.1f%% inserted out of order%n",
+                    style, ROWS, ms, ROWS * 1000L / Math.max(ms, 1), outOfOrder * 100.0 / ROWS);
+        }
+    }
+
+    // H2 orders uuid columns by unsigned bytes
+    private static int compareUnsigned(UUID a, UUID b) {
+        int order = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return order != 0 ? order : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,46 @@
+package dev.dccok.utils;
+
+import org.hibernate.id.uuid.CustomVersionOneStrategy;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Id generation throughput of the InquisitiveIdGenerator styles with 8 threads generating concurrently.
+ * Not picked up by surefire, run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=dev.dccok.utils.UuidStyleBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class UuidStyleBenchmark {
+
+    private final CustomVersionOneStrategy timeStrategy = new CustomVersionOneStrategy();
+
+    @Benchmark
+    public UUID random() {
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    public UUID time() {
+        return timeStrategy.generateUuid(null);
+    }
+
+    @Benchmark
+    public UUID v7() {
+        return UuidV7Generator.next();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(UuidStyleBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,51 @@
+package dev.dccok.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UuidV7GeneratorTest {
+
+    @Test
+    void next_versionAndOrdering() {
+        long before = System.currentTimeMillis();
+        UUID previous = UuidV7Generator.next();
+        assertEquals(7, previous.version());
+        assertEquals(2, previous.variant());
+        assertTrue((previous.getMostSignificantBits() >>> 16) >= before);
+        for (int i = 0; i < 10000; i++) {
+            UUID next = UuidV7Generator.next();
+            // unsigned compare of the time and sequence bits, UUID.compareTo is signed
+            int order = Long.compareUnsigned(next.getMostSignificantBits(), previous.getMostSignificantBits());
+            assertTrue(order > 0 || order == 0 && (next.getLeastSignificantBits() >>> 58) > (previous.getLeastSignificantBits() >>> 58));
+            previous = next;
+        }
+    }
+
+    @Test
+    void next_uniqueAcrossThreads() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<List<UUID>>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            results.add(pool.submit(() -> {
+                List<UUID> ids = new ArrayList<>();
+                for (int i = 0; i < 20000; i++) {
+                    ids.add(UuidV7Generator.next());
+                }
+                return ids;
+            }));
+        }
+        Set<String> sequences = new HashSet<>();
+        for (Future<List<UUID>> result : results) {
+            for (UUID id : result.get()) {
+                // the time and sequence bits alone must be unique, the random tail is not needed for that
+                assertTrue(sequences.add(id.getMostSignificantBits() + "/" + (id.getLeastSignificantBits() >>> 58)));
+            }
+        }
+        pool.shutdown();
+        assertEquals(160000, sequences.size());
+    }
+}
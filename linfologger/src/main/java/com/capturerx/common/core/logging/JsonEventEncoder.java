@@ -0,0 +1,195 @@
+package com.capturerx.common.core.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * One JSON object per line: ts, level, logger, thread, msg, the configured MDC fields and the stack trace.
+ * Events are written into a reused per-thread buffer, escaped and UTF-8 encoded in place, the returned
+ * array is the only allocation per event (the Encoder contract hands back a byte[]).  A buffer grown past
+ * MAX_RETAINED_BYTES by a large event (a long stack trace) is not kept for the thread.
+ *
+ * <encoder class="com.capturerx.common.core.logging.JsonEventEncoder">
+ *     <mdcKeys>authSub,username</mdcKeys>
+ * </encoder>
+ */
+public class JsonEventEncoder extends EncoderBase<ILoggingEvent> {
+
+    private static final DateTimeFormatter SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneOffset.UTC);
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final int INITIAL_BYTES = 1024;
+    static final int MAX_RETAINED_BYTES = 64 * 1024;
+
+    private static final class Buffer {
+        byte[] bytes = new byte[INITIAL_BYTES];
+        int length;
+        long second = Long.MIN_VALUE;
+        byte[] secondText;
+
+        void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        void raw(byte b) {
+            ensure(1);
+            bytes[length++] = b;
+        }
+
+        void raw(String ascii) {
+            ensure(ascii.length());
+            for (int i = 0; i < ascii.length(); i++) {
+                bytes[length++] = (byte) ascii.charAt(i);
+            }
+        }
+
+        void raw(byte[] ascii) {
+            ensure(ascii.length);
+            System.arraycopy(ascii, 0, bytes, length, ascii.length);
+            length += ascii.length;
+        }
+
+        void number(long value, int digits) {
+            ensure(digits);
+            for (int i = digits - 1; i >= 0; i--) {
+                bytes[length + i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+        }
+
+        // JSON string escaping straight into UTF-8
+        void string(CharSequence text) {
+            raw((byte) '"');
+            if (text != null) {
+                ensure(text.length() * 3);
+                for (int i = 0; i < text.length(); i++) {
+                    char c = text.charAt(i);
+                    if (c == '"' || c == '\\') {
+                        ensure(2 + (text.length() - i) * 3);
+                        bytes[length++] = '\\';
+                        bytes[length++] = (byte) c;
+                    } else if (c < 0x20) {
+                        ensure(6 + (text.length() - i) * 3);
+                        bytes[length++] = '\\';
+                        bytes[length++] = 'u';
+                        bytes[length++] = '0';
+                        bytes[length++] = '0';
+                        bytes[length++] = HEX[c >> 4];
+                        bytes[length++] = HEX[c & 0xF];
+                    } else if (c < 0x80) {
+                        bytes[length++] = (byte) c;
+                    } else if (c < 0x800) {
+                        bytes[length++] = (byte) (0xC0 | c >> 6);
+                        bytes[length++] = (byte) (0x80 | c & 0x3F);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, text.charAt(++i));
+                        ensure(4 + (text.length() - i) * 3);
+                        bytes[length++] = (byte) (0xF0 | cp >> 18);
+                        bytes[length++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                        bytes[length++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                        bytes[length++] = (byte) (0x80 | cp & 0x3F);
+                    } else {
+                        bytes[length++] = (byte) (0xE0 | c >> 12);
+                        bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                        bytes[length++] = (byte) (0x80 | c & 0x3F);
+                    }
+                }
+            }
+            raw((byte) '"');
+        }
+
+        void field(String name, CharSequence value) {
+            raw((byte) ',');
+            string(name);
+            raw((byte) ':');
+            string(value);
+        }
+    }
+
+    private static final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(Buffer::new);
+
+    private String[] mdcKeys = {"authSub", "username"};
+
+    public void setMdcKeys(String keys) {
+        mdcKeys = Arrays.stream(keys.split(",")).map(String::trim).filter(k -> !k.isEmpty()).toArray(String[]::new);
+    }
+
+    @Override
+    public byte[] headerBytes() {
+        return null;
+    }
+
+    @Override
+    public byte[] encode(ILoggingEvent event) {
+        Buffer buf = buffers.get();
+        buf.length = 0;
+        buf.raw("{\"ts\":\"");
+        long millis = event.getTimeStamp();
+        long second = Math.floorDiv(millis, 1000);
+        if (second != buf.second) {
+            buf.second = second;
+            buf.secondText = SECONDS.format(Instant.ofEpochSecond(second)).getBytes();
+        }
+        buf.raw(buf.secondText);
+        buf.raw((byte) '.');
+        buf.number(Math.floorMod(millis, 1000), 3);
+        buf.raw("Z\"");
+        buf.field("level", event.getLevel().levelStr);
+        buf.field("logger", event.getLoggerName());
+        buf.field("thread", event.getThreadName());
+        buf.field("msg", event.getFormattedMessage());
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        if (mdc != null && !mdc.isEmpty()) {
+            for (String key : mdcKeys) {
+                String value = mdc.get(key);
+                if (value != null) {
+                    buf.field(key, value);
+                }
+            }
+        }
+        if (event.getThrowableProxy() != null) {
+            buf.raw(",\"exception\":");
+            stackTrace(buf, event.getThrowableProxy());
+        }
+        buf.raw("}\n");
+        byte[] encoded = Arrays.copyOf(buf.bytes, buf.length);
+        if (buf.bytes.length > MAX_RETAINED_BYTES) {
+            buf.bytes = new byte[INITIAL_BYTES];
+        }
+        return encoded;
+    }
+
+    // capacity of the calling thread's buffer
+    static int retainedBytes() {
+        return buffers.get().bytes.length;
+    }
+
+    private static void stackTrace(Buffer buf, IThrowableProxy throwable) {
+        StringBuilder text = new StringBuilder(256);
+        for (IThrowableProxy t = throwable; t != null; t = t.getCause()) {
+            if (t != throwable) {
+                text.append("Caused by: ");
+            }
+            text.append(t.getClassName()).append(": ").append(t.getMessage()).append('\n');
+            for (StackTraceElementProxy element : t.getStackTraceElementProxyArray()) {
+                text.append("\tat ").append(element.getStackTraceElement()).append('\n');
+            }
+        }
+        buf.string(text);
+    }
+
+    @Override
+    public byte[] footerBytes() {
+        return null;
+    }
+}
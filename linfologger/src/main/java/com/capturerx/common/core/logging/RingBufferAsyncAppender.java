@@ -0,0 +1,236 @@
+package com.capturerx.common.core.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands events to the attached appenders on one worker thread through a bounded ring buffer, the logging thread
+ * never waits on the sink.  Once fewer than discardingThreshold slots are free, events below WARN are dropped, a
+ * full buffer drops everything.  Drops are counted per level (getDroppedCount) and reported as one WARN event
+ * at most every reportIntervalMs.  An idle worker parks until a producer publishes an event, and the attached
+ * appenders are stopped by the worker once it has flushed the buffer after stop().
+ *
+ * <appender name="ASYNC" class="com.capturerx.common.core.logging.RingBufferAsyncAppender">
+ *     <bufferSize>8192</bufferSize>
+ *     <appender-ref ref="CONSOLE_JSON"/>
+ * </appender>
+ */
+public class RingBufferAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
+
+    private static final Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR};
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final AtomicLongArray dropped = new AtomicLongArray(LEVELS.length);
+    private final AtomicLong droppedSinceReport = new AtomicLong();
+    // producers claim slots by moving tail, the worker alone moves head
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    // set by the worker before it parks on an empty buffer, producers unpark it after publishing
+    private volatile boolean idle;
+    private AtomicReferenceArray<ILoggingEvent> ring;
+    private int mask;
+
+    private int bufferSize = 8192;
+    private int discardingThreshold = -1;
+    private long reportIntervalMs = 10000L;
+    private long maxFlushTimeMs = 1000L;
+    private Thread worker;
+
+    @Override
+    public void start() {
+        if (isStarted()) return;
+        if (!appenders.iteratorForAppenders().hasNext()) {
+            addError("No appender attached to " + getName());
+            return;
+        }
+        int capacity = Integer.highestOneBit(Math.max(bufferSize - 1, 1)) << 1;
+        ring = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+        if (discardingThreshold < 0) {
+            discardingThreshold = capacity / 5;
+        }
+        worker = new Thread(this::drain, "logback-ring-" + getName());
+        worker.setDaemon(true);
+        super.start();
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) return;
+        super.stop();
+        LockSupport.unpark(worker);
+        try {
+            worker.join(maxFlushTimeMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // the worker may still be writing, it detaches the appenders when it has drained the buffer
+        if (worker.isAlive()) {
+            addWarn(String.format("%s stopped with %d events not flushed yet", getName(), tail.get() - head));
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        int index = levelIndex(event.getLevel());
+        // message, MDC and thread name captured on the logging thread, before a slot is claimed
+        event.prepareForDeferredProcessing();
+        while (true) {
+            long t = tail.get();
+            long free = ring.length() - (t - head);
+            if (free <= 0 || (free <= discardingThreshold && index < 3)) {
+                dropped.incrementAndGet(index);
+                droppedSinceReport.incrementAndGet();
+                return;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                ring.set((int) (t & mask), event);
+                if (idle) {
+                    LockSupport.unpark(worker);
+                }
+                return;
+            }
+        }
+    }
+
+    private void drain() {
+        long lastReport = System.currentTimeMillis();
+        while (isStarted() || head < tail.get()) {
+            long h = head;
+            if (h == tail.get()) {
+                // idle is written before tail is read again, a producer moving tail after that sees it
+                idle = true;
+                if (h == tail.get() && isStarted()) {
+                    long untilReport = reportIntervalMs - (System.currentTimeMillis() - lastReport);
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Math.max(untilReport, 1)));
+                }
+                idle = false;
+            } else {
+                int slot = (int) (h & mask);
+                ILoggingEvent event = ring.get(slot);
+                if (event == null) {
+                    Thread.onSpinWait(); // slot claimed, not written yet
+                    continue;
+                }
+                ring.set(slot, null);
+                head = h + 1;
+                dispatch(event);
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= reportIntervalMs) {
+                lastReport = now;
+                reportDrops();
+            }
+        }
+        reportDrops();
+        appenders.detachAndStopAllAppenders();
+    }
+
+    private void dispatch(ILoggingEvent event) {
+        try {
+            appenders.appendLoopOnAppenders(event);
+        } catch (RuntimeException e) {
+            addError("Appender failed in " + getName(), e);
+        }
+    }
+
+    private void reportDrops() {
+        long count = droppedSinceReport.getAndSet(0);
+        if (count == 0) return;
+        String message = String.format("%s dropped %d log events, buffer of %d full", getName(), count, ring.length());
+        addWarn(message);
+        ch.qos.logback.classic.spi.LoggingEvent report = new ch.qos.logback.classic.spi.LoggingEvent(
+                RingBufferAsyncAppender.class.getName(), ((ch.qos.logback.classic.LoggerContext) getContext())
+                .getLogger(RingBufferAsyncAppender.class), Level.WARN, message, null, null);
+        dispatch(report);
+    }
+
+    private static int levelIndex(Level level) {
+        return switch (level.toInt()) {
+            case Level.TRACE_INT -> 0;
+            case Level.DEBUG_INT -> 1;
+            case Level.INFO_INT -> 2;
+            case Level.WARN_INT -> 3;
+            default -> 4;
+        };
+    }
+
+    public long getDroppedCount(Level level) {
+        return dropped.get(levelIndex(level));
+    }
+
+    public long getDroppedCount() {
+        long total = 0;
+        for (int i = 0; i < LEVELS.length; i++) {
+            total += dropped.get(i);
+        }
+        return total;
+    }
+
+    public int getQueuedCount() {
+        return (int) (tail.get() - head);
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setDiscardingThreshold(int discardingThreshold) {
+        this.discardingThreshold = discardingThreshold;
+    }
+
+    public void setReportIntervalMs(long reportIntervalMs) {
+        this.reportIntervalMs = reportIntervalMs;
+    }
+
+    public void setMaxFlushTimeMs(long maxFlushTimeMs) {
+        this.maxFlushTimeMs = maxFlushTimeMs;
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
@@ -0,0 +1,66 @@
+package com.capturerx.common.core.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonEventEncoderTest {
+
+    private final LoggerContext context = new LoggerContext();
+
+    private LoggingEvent event(String message, Throwable t) {
+        LoggingEvent event = new LoggingEvent(getClass().getName(), context.getLogger("com.capturerx.Test"), Level.INFO, message, t, null);
+        event.setTimeStamp(1700000000123L);
+        event.setThreadName("worker-1");
+        event.setMDCPropertyMap(Map.of("authSub", "sub-1", "username", "jdoe", "other", "x"));
+        return event;
+    }
+
+    @Test
+    void encode_fieldsAndEscaping() throws Exception {
+        JsonEventEncoder encoder = new JsonEventEncoder();
+        byte[] bytes = encoder.encode(event("quote \" backslash \\ tab \t é € 😀", null));
+
+        String line = new String(bytes, StandardCharsets.UTF_8);
+        assertTrue(line.endsWith("}\n"));
+        JsonNode json = new ObjectMapper().readTree(line);
+        assertEquals("2023-11-14T22:13:20.123Z", json.get("ts").asText());
+        assertEquals("INFO", json.get("level").asText());
+        assertEquals("com.capturerx.Test", json.get("logger").asText());
+        assertEquals("worker-1", json.get("thread").asText());
+        assertEquals("quote \" backslash \\ tab \t é € 😀", json.get("msg").asText());
+        assertEquals("sub-1", json.get("authSub").asText());
+        assertEquals("jdoe", json.get("username").asText());
+        assertNull(json.get("other"));
+    }
+
+    @Test
+    void encode_exceptionAndMdcKeys() throws Exception {
+        JsonEventEncoder encoder = new JsonEventEncoder();
+        encoder.setMdcKeys("other");
+        JsonNode json = new ObjectMapper().readTree(encoder.encode(event("failed", new IllegalStateException("boom"))));
+
+        assertTrue(json.get("exception").asText().startsWith("java.lang.IllegalStateException: boom\n\tat "));
+        assertEquals("x", json.get("other").asText());
+        assertNull(json.get("username"));
+    }
+
+    @Test
+    void encode_largeEventBufferNotRetained() throws Exception {
+        JsonEventEncoder encoder = new JsonEventEncoder();
+        String large = "x".repeat(JsonEventEncoder.MAX_RETAINED_BYTES);
+
+        JsonNode json = new ObjectMapper().readTree(encoder.encode(event(large, null)));
+        assertEquals(large, json.get("msg").asText());
+        assertTrue(JsonEventEncoder.retainedBytes() <= JsonEventEncoder.MAX_RETAINED_BYTES);
+        assertEquals("small", new ObjectMapper().readTree(encoder.encode(event("small", null))).get("msg").asText());
+    }
+}
@@ -0,0 +1,148 @@
+package com.capturerx.common.core.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferAsyncAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+
+    RingBufferAsyncAppenderTest() {
+        context.setMDCAdapter(new LogbackMDCAdapter());
+    }
+
+    private ILoggingEvent event(Level level, String message) {
+        return new LoggingEvent(getClass().getName(), context.getLogger("com.capturerx.Test"), level, message, null, null);
+    }
+
+    private RingBufferAsyncAppender async(int bufferSize, ch.qos.logback.core.Appender<ILoggingEvent> target) {
+        RingBufferAsyncAppender appender = new RingBufferAsyncAppender();
+        appender.setContext(context);
+        appender.setName("ASYNC");
+        appender.setBufferSize(bufferSize);
+        appender.addAppender(target);
+        appender.start();
+        return appender;
+    }
+
+    @Test
+    void append_deliversInOrderAndFlushesOnStop() {
+        ListAppender<ILoggingEvent> target = new ListAppender<>();
+        target.setContext(context);
+        target.start();
+        RingBufferAsyncAppender appender = async(1024, target);
+
+        for (int i = 0; i < 500; i++) {
+            appender.doAppend(event(Level.INFO, "event " + i));
+        }
+        appender.stop();
+
+        assertEquals(500, target.list.size());
+        assertEquals("event 0", target.list.get(0).getFormattedMessage());
+        assertEquals("event 499", target.list.get(499).getFormattedMessage());
+        assertEquals(0, appender.getDroppedCount());
+    }
+
+    @Test
+    void append_dropsWhenSinkIsSlow() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        ListAppender<ILoggingEvent> received = new ListAppender<>();
+        received.start();
+        AppenderBase<ILoggingEvent> slowSink = new AppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.doAppend(event);
+            }
+        };
+        slowSink.setContext(context);
+        slowSink.start();
+        RingBufferAsyncAppender appender = async(16, slowSink);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            appender.doAppend(event(Level.INFO, "info " + i));
+        }
+        appender.doAppend(event(Level.ERROR, "error kept"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "logging thread must not wait on the sink");
+        release.countDown();
+        appender.stop();
+
+        // the threshold (a fifth of the buffer) is left for WARN and ERROR
+        assertTrue(appender.getDroppedCount(Level.INFO) > 80);
+        assertEquals(0, appender.getDroppedCount(Level.ERROR));
+        assertTrue(received.list.stream().anyMatch(e -> e.getFormattedMessage().equals("error kept")));
+        assertTrue(received.list.stream().anyMatch(e -> e.getFormattedMessage().startsWith("ASYNC dropped")));
+    }
+
+    @Test
+    void stop_appendersStoppedOnlyAfterWorkerFlushed() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        ListAppender<ILoggingEvent> received = new ListAppender<>();
+        received.start();
+        AppenderBase<ILoggingEvent> slowSink = new AppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.doAppend(event);
+            }
+        };
+        slowSink.setContext(context);
+        slowSink.start();
+        RingBufferAsyncAppender appender = async(16, slowSink);
+        appender.setMaxFlushTimeMs(50);
+
+        for (int i = 0; i < 5; i++) {
+            appender.doAppend(event(Level.INFO, "info " + i));
+        }
+        appender.stop();
+        assertTrue(slowSink.isStarted(), "sink stopped while the worker still writes to it");
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (slowSink.isStarted() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(slowSink.isStarted());
+        assertEquals(5, received.list.size());
+    }
+
+    @Test
+    void append_wakesIdleWorker() throws InterruptedException {
+        CountDownLatch delivered = new CountDownLatch(1);
+        AppenderBase<ILoggingEvent> sink = new AppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                delivered.countDown();
+            }
+        };
+        sink.setContext(context);
+        sink.start();
+        RingBufferAsyncAppender appender = async(16, sink);
+        appender.setReportIntervalMs(60000L);
+        Thread.sleep(100); // worker parked
+
+        appender.doAppend(event(Level.INFO, "wake"));
+        assertTrue(delivered.await(1, TimeUnit.SECONDS));
+        appender.stop();
+    }
+}